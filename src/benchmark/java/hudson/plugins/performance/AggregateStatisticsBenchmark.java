@@ -0,0 +1,84 @@
+package hudson.plugins.performance;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording a sample and of answering percentiles, with the samples
+ * kept exactly or recorded in a {@link LogLinearHistogram}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregateStatisticsBenchmark {
+
+  private static final int SAMPLES = 100000;
+
+  private static final double[] PERCENTILES = { .5, .9, .95, .99, .999 };
+
+  @Param({ "exact", "histogram" })
+  public String storage;
+
+  private long[] durations;
+
+  private AggregateStatistics.Unfrozen recorded;
+
+  @Setup
+  public void recordSamples() {
+    durations = new BenchmarkData(42, 1).durations(SAMPLES);
+    recorded = newStatistics();
+    for (int i = 0; i < SAMPLES; i++) {
+      recorded.sample(durations[i], false, i);
+    }
+  }
+
+  private AggregateStatistics.Unfrozen newStatistics() {
+    return new AggregateStatistics.Unfrozen(storage.equals("exact") ? SAMPLES : 0,
+        AggregateStatistics.DEFAULT_SIGNIFICANT_DIGITS);
+  }
+
+  /**
+   * Time per sample recorded.
+   */
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public AggregateStatistics sample() {
+    AggregateStatistics.Unfrozen stats = newStatistics();
+    for (int i = 0; i < SAMPLES; i++) {
+      stats.sample(durations[i], false, i);
+    }
+    return stats;
+  }
+
+  /**
+   * Time to answer five percentiles of the samples.
+   */
+  @Benchmark
+  public long[] percentiles() {
+    return recorded.getPercentiles(PERCENTILES);
+  }
+
+  /**
+   * Time to freeze the statistics, which computes the median, the 90% line
+   * and the tracked percentiles.
+   */
+  @Benchmark
+  public AggregateStatistics freeze() {
+    return recorded.asFrozen();
+  }
+}
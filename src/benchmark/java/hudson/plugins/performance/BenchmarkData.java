@@ -0,0 +1,161 @@
+package hudson.plugins.performance;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Synthetic samples for the benchmarks: URIs picked with a skewed
+ * distribution, log-normal durations around 200 ms and 2% of failures, always
+ * the same for a given seed.
+ */
+final class BenchmarkData {
+
+  private static final long START = 1300000000000L;
+
+  private final Random random;
+
+  private final int uris;
+
+  BenchmarkData(long seed, int uris) {
+    this.random = new Random(seed);
+    this.uris = uris;
+  }
+
+  String nextUri() {
+    // a few URIs take most of the samples, as in real tests
+    double skewed = random.nextDouble();
+    return "/app/page" + (int) (skewed * skewed * uris);
+  }
+
+  long nextDuration() {
+    return (long) (200 * Math.exp(random.nextGaussian() / 2));
+  }
+
+  boolean nextSuccess() {
+    return random.nextInt(50) != 0;
+  }
+
+  long[] durations(int count) {
+    long[] durations = new long[count];
+    for (int i = 0; i < count; i++) {
+      durations[i] = nextDuration();
+    }
+    return durations;
+  }
+
+  /**
+   * Writes samples as a JMeter XML report.
+   */
+  File writeJtl(int samples) throws IOException {
+    File file = createTempFile(".jtl");
+    Writer out = open(file);
+    try {
+      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testResults version=\"1.2\">\n");
+      for (int i = 0; i < samples; i++) {
+        out.write("<httpSample t=\"" + nextDuration() + "\" lt=\"" + nextDuration() / 2
+            + "\" ts=\"" + (START + i * 10L) + "\" s=\"" + nextSuccess() + "\" lb=\""
+            + nextUri() + "\" rc=\"200\" rm=\"OK\" tn=\"Thread Group 1-" + (i % 50 + 1)
+            + "\" dt=\"text\" by=\"" + (1000 + random.nextInt(50000)) + "\"/>\n");
+      }
+      out.write("</testResults>\n");
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  /**
+   * Writes samples as JMeter CSV results, with JMeter's default columns.
+   */
+  File writeCsv(int samples) throws IOException {
+    File file = createTempFile(".csv");
+    Writer out = open(file);
+    try {
+      out.write("timeStamp,elapsed,label,responseCode,responseMessage,threadName,"
+          + "dataType,success,bytes,Latency\n");
+      for (int i = 0; i < samples; i++) {
+        out.write((START + i * 10L) + "," + nextDuration() + "," + nextUri()
+            + ",200,OK,Thread Group 1-" + (i % 50 + 1) + ",text," + nextSuccess()
+            + "," + (1000 + random.nextInt(50000)) + "," + nextDuration() / 2 + "\n");
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  /**
+   * Writes samples as a JUnit XML report, each sample being a test case.
+   */
+  File writeJUnit(int samples) throws IOException {
+    File file = createTempFile(".xml");
+    Writer out = open(file);
+    try {
+      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<testsuite name=\"Benchmark\" tests=\""
+          + samples + "\">\n");
+      for (int i = 0; i < samples; i++) {
+        out.write("  <testcase time=\"" + nextDuration() / 1000.0
+            + "\" classname=\"Benchmark\" name=\"" + nextUri() + "\"");
+        if (nextSuccess()) {
+          out.write("/>\n");
+        } else {
+          out.write(">\n    <failure message=\"failed\">failed</failure>\n  </testcase>\n");
+        }
+      }
+      out.write("</testsuite>\n");
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  /**
+   * A report of samples added through a {@link SampleBatch}, as parsers do.
+   */
+  PerformanceReport createReport(int samples) {
+    PerformanceReport report = new PerformanceReport();
+    report.setReportFileName("benchmark.jtl");
+    SampleBatch batch = new SampleBatch(report);
+    for (int i = 0; i < samples; i++) {
+      batch.add(report.getLabelId(nextUri()), START + i * 10L, nextDuration(),
+          nextSuccess());
+    }
+    batch.flush();
+    return report;
+  }
+
+  static File createTempFile(String suffix) throws IOException {
+    File file = File.createTempFile("benchmark", suffix);
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static Writer open(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+        "UTF-8"), 64 * 1024);
+  }
+
+  /**
+   * A listener that drops what the parsers log.
+   */
+  static TaskListener nullListener() {
+    return new StreamTaskListener(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    });
+  }
+}
@@ -0,0 +1,85 @@
+package hudson.plugins.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the parsers on a single file, in samples and in bytes per
+ * second, reported as the <code>samples</code> and <code>bytes</code>
+ * counters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+  @Param({ "jtl", "csv", "junit" })
+  public String format;
+
+  @Param({ "200000" })
+  public int samples;
+
+  @Param({ "50" })
+  public int uris;
+
+  private PerformanceReportParser parser;
+
+  private File report;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    public long samples;
+
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      samples = 0;
+      bytes = 0;
+    }
+  }
+
+  @Setup
+  public void writeReport() throws IOException {
+    BenchmarkData data = new BenchmarkData(42, uris);
+    if (format.equals("jtl")) {
+      parser = new JMeterParser(null);
+      report = data.writeJtl(samples);
+    } else if (format.equals("csv")) {
+      parser = new JMeterCsvParser(null);
+      report = data.writeCsv(samples);
+    } else {
+      parser = new JUnitParser(null);
+      report = data.writeJUnit(samples);
+    }
+  }
+
+  @Benchmark
+  public PerformanceReport parse(Counters counters) throws Exception {
+    PerformanceReport r = parser.parse(null, report, BenchmarkData.nullListener());
+    counters.samples += r.size();
+    counters.bytes += report.length();
+    // as once their store is written, so that spilled samples don't pile up
+    r.discardSamples();
+    return r;
+  }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.performance;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per sample added to a {@link PerformanceReport}, one
+ * {@link HttpSample} at a time or through a {@link SampleBatch}, with few or
+ * many distinct URIs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PerformanceReportBenchmark {
+
+  private static final int SAMPLES = 100000;
+
+  @Param({ "10", "10000" })
+  public int uris;
+
+  private HttpSample[] httpSamples;
+
+  private String[] labels;
+
+  private long[] durations;
+
+  private boolean[] successes;
+
+  @Setup
+  public void createSamples() {
+    BenchmarkData data = new BenchmarkData(42, uris);
+    httpSamples = new HttpSample[SAMPLES];
+    labels = new String[SAMPLES];
+    durations = new long[SAMPLES];
+    successes = new boolean[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      labels[i] = data.nextUri();
+      durations[i] = data.nextDuration();
+      successes[i] = data.nextSuccess();
+      HttpSample sample = new HttpSample();
+      sample.setUri(labels[i]);
+      sample.setDate(new Date(1300000000000L + i * 10L));
+      sample.setDuration(durations[i]);
+      sample.setSuccessful(successes[i]);
+      httpSamples[i] = sample;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public PerformanceReport addSample() throws Exception {
+    PerformanceReport report = new PerformanceReport();
+    for (int i = 0; i < SAMPLES; i++) {
+      report.addSample(httpSamples[i]);
+    }
+    report.discardSamples();
+    return report;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES)
+  public PerformanceReport addSamples() {
+    PerformanceReport report = new PerformanceReport();
+    SampleBatch batch = new SampleBatch(report);
+    for (int i = 0; i < SAMPLES; i++) {
+      batch.add(report.getLabelId(labels[i]), 1300000000000L + i * 10L,
+          durations[i], successes[i]);
+    }
+    batch.flush();
+    report.discardSamples();
+    return report;
+  }
+}
@@ -0,0 +1,60 @@
+package hudson.plugins.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to write and read back the summary of a report, as
+ * {@link PerformanceReportMap} does when a build is published and when its
+ * page is first shown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SummaryBenchmark {
+
+  @Param({ "10", "1000" })
+  public int uris;
+
+  @Param({ "100000" })
+  public int samples;
+
+  private PerformanceReport report;
+
+  private File summary;
+
+  @Setup
+  public void writeSummary() throws IOException {
+    report = new BenchmarkData(42, uris).createReport(samples);
+    report.setPercentiles(new double[] { 95, 99 });
+    summary = BenchmarkData.createTempFile(".summary");
+    PerformanceReportMap.writeSummary(summary, report);
+  }
+
+  @Benchmark
+  public File write() throws IOException {
+    PerformanceReportMap.writeSummary(summary, report);
+    return summary;
+  }
+
+  @Benchmark
+  public PerformanceReport read() throws IOException {
+    return SummaryStore.read(summary);
+  }
+}
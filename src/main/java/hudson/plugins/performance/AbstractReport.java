@@ -19,6 +19,13 @@ public abstract class AbstractReport implements StatsReport {
   abstract public double errorPercent();
 
   public AbstractReport() {
+  }
+
+  /**
+   * The formats are only created when a page shows this report, not for each
+   * report read from a summary.
+   */
+  private void createFormats() {
     if (Stapler.getCurrentRequest() != null) {
       Locale.setDefault(Stapler.getCurrentRequest().getLocale());
     }
@@ -26,37 +33,73 @@ public abstract class AbstractReport implements StatsReport {
     dataFormat = new DecimalFormat("#,###");
   }
 
+  private NumberFormat getPercentFormat() {
+    if (percentFormat == null) {
+      createFormats();
+    }
+    return percentFormat;
+  }
+
+  private NumberFormat getDataFormat() {
+    if (dataFormat == null) {
+      createFormats();
+    }
+    return dataFormat;
+  }
+
   public String errorPercentFormated() {
     Stapler.getCurrentRequest().getLocale();
-    return percentFormat.format(errorPercent());
+    return getPercentFormat().format(errorPercent());
 
   }
 
   abstract public long getAverage();
 
   public String getAverageFormated() {
-    return dataFormat.format(getAverage());
+    return getDataFormat().format(getAverage());
   }
 
   abstract public long getMedian();
 
   public String getMeanFormated() {
-    return dataFormat.format(getMedian());
+    return getDataFormat().format(getMedian());
   }
 
   abstract public long get90Line();
 
   public String get90LineFormated() {
-    return dataFormat.format(get90Line());
+    return getDataFormat().format(get90Line());
+  }
+
+  abstract public double[] getPercentiles();
+
+  abstract public long getPercentile(double percentile);
+
+  public String getPercentileFormated(double percentile) {
+    return getDataFormat().format(getPercentile(percentile));
+  }
+
+  /**
+   * Formats a percentile for labels, dropping a zero fraction: 95, 99.9.
+   */
+  public static String formatPercentile(double percentile) {
+    return percentile == Math.floor(percentile) ? String.valueOf((long) percentile)
+        : String.valueOf(percentile);
   }
 
   abstract public long getMax();
 
   public String getMaxFormated() {
-    return dataFormat.format(getMax());
+    return getDataFormat().format(getMax());
   }
 
   abstract public long getMin();
 
+  abstract public double getThroughput();
+
+  public String getThroughputFormated() {
+    return getPercentFormat().format(getThroughput());
+  }
+
   abstract public int size();
 }
@@ -1,9 +1,5 @@
 package hudson.plugins.performance;
 
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Collections;
-
 import com.thoughtworks.xstream.converters.ConversionException;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
@@ -11,11 +7,29 @@ import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
 /**
  * Computes a set of aggregate statistics incrementally over
  * a set of sample values
  */
-public abstract class AggregateStatistics {
+public abstract class AggregateStatistics implements Serializable {
+
+  /**
+   * Number of samples kept exactly before {@link Unfrozen} switches to
+   * recording a {@link LogLinearHistogram}.
+   */
+  public static final int DEFAULT_EXACT_SAMPLE_LIMIT = Integer.getInteger(
+      AggregateStatistics.class.getName() + ".exactSampleLimit", 100000);
+
+  /**
+   * Precision of the histograms, see {@link LogLinearHistogram}.
+   */
+  public static final int DEFAULT_SIGNIFICANT_DIGITS = Integer.getInteger(
+      AggregateStatistics.class.getName() + ".significantDigits", 2);
 
   protected long total = 0;
   protected int size = 0;
@@ -23,18 +37,53 @@ public abstract class AggregateStatistics {
   protected long max = Long.MIN_VALUE;
   protected int errors = 0;
 
+  /**
+   * Start of the first sample and end of the last one, in epoch
+   * milliseconds, over the samples whose start time is known.
+   */
+  protected long firstStart = Long.MAX_VALUE;
+  protected long lastEnd = Long.MIN_VALUE;
+
   public static class Frozen extends AggregateStatistics {
     private long line90 = 0;
     private long median = 0;
 
+    /**
+     * Additional percentiles, in percent, and their values.
+     */
+    private double[] percentiles = new double[0];
+    private long[] percentileValues = new long[0];
+
+    /**
+     * Distribution of the samples, null for summaries written before
+     * histograms were persisted.
+     */
+    private LogLinearHistogram histogram;
+
+    Frozen() {
+    }
+
     public Frozen(AggregateStatistics.Unfrozen stats) {
       this.total = stats.getTotal();
       this.size = stats.getSize();
       this.min = stats.getMin();
       this.max = stats.getMax();
       this.errors = stats.getErrorCount();
-      this.line90 = stats.get90Line();
-      this.median = stats.getMedian();
+      this.firstStart = stats.getFirstStart();
+      this.lastEnd = stats.getLastEnd();
+      this.percentiles = stats.getTrackedPercentiles();
+      double[] fractions = new double[percentiles.length + 2];
+      fractions[0] = .5;
+      fractions[1] = .9;
+      for (int i = 0; i < percentiles.length; i++) {
+        fractions[i + 2] = percentiles[i] / 100;
+      }
+      long[] values = stats.getPercentiles(fractions);
+      this.median = values[0];
+      this.line90 = values[1];
+      this.percentileValues = new long[percentiles.length];
+      System.arraycopy(values, 2, percentileValues, 0, percentiles.length);
+      this.histogram = stats.getHistogram();
     }
 
     @Override
@@ -47,27 +96,125 @@ public abstract class AggregateStatistics {
       return median;
     }
 
+    @Override
+    public long getPercentile(double percentile) {
+      if (percentile == .5) {
+        return median;
+      } else if (percentile == .9) {
+        return line90;
+      }
+      for (int i = 0; i < percentiles.length; i++) {
+        if (Math.abs(percentiles[i] / 100 - percentile) < 1e-9) {
+          return percentileValues[i];
+        }
+      }
+      if (histogram != null) {
+        return clamp(histogram.getValueAtPercentile(percentile));
+      }
+      return 0;
+    }
+
+    @Override
+    public LogLinearHistogram getHistogram() {
+      return histogram;
+    }
+
     @Override
     public Frozen asFrozen() {
       return this;
     }
 
+    /**
+     * Writes these statistics for a {@link SummaryStore}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+      out.writeLong(total);
+      out.writeInt(size);
+      out.writeLong(min);
+      out.writeLong(max);
+      out.writeInt(errors);
+      out.writeLong(line90);
+      out.writeLong(median);
+      out.writeInt(percentiles.length);
+      for (int i = 0; i < percentiles.length; i++) {
+        out.writeDouble(percentiles[i]);
+        out.writeLong(percentileValues[i]);
+      }
+      out.writeBoolean(histogram != null);
+      if (histogram != null) {
+        histogram.writeTo(out);
+      }
+      out.writeLong(firstStart);
+      out.writeLong(lastEnd);
+    }
+
+    static Frozen readFrom(DataInput in) throws IOException {
+      Frozen frozen = new Frozen();
+      frozen.total = in.readLong();
+      frozen.size = in.readInt();
+      frozen.min = in.readLong();
+      frozen.max = in.readLong();
+      frozen.errors = in.readInt();
+      frozen.line90 = in.readLong();
+      frozen.median = in.readLong();
+      int count = in.readInt();
+      frozen.percentiles = new double[count];
+      frozen.percentileValues = new long[count];
+      for (int i = 0; i < count; i++) {
+        frozen.percentiles[i] = in.readDouble();
+        frozen.percentileValues[i] = in.readLong();
+      }
+      if (in.readBoolean()) {
+        frozen.histogram = LogLinearHistogram.readFrom(in);
+      }
+      frozen.firstStart = in.readLong();
+      frozen.lastEnd = in.readLong();
+      return frozen;
+    }
+
     @Override
     public Unfrozen asUnfrozen() {
       return new Unfrozen();
     }
   }
 
+  /**
+   * Keeps every sample until {@link #getExactSampleLimit()} is exceeded, then
+   * records them into a {@link LogLinearHistogram} so that memory no longer
+   * grows with the number of samples.
+   */
   public static class Unfrozen extends AggregateStatistics {
     private Long line90 = Long.valueOf(0);
     private Long median = Long.valueOf(0);
-    private boolean samplesSorted = true;
-    private List<Long> samples = new ArrayList<Long>();
+    private long[] samples = new long[16];
+    private LogLinearHistogram histogram;
+    private double[] trackedPercentiles = new double[0];
+    private final int exactSampleLimit;
+    private final int significantDigits;
+
+    public Unfrozen() {
+      this(DEFAULT_EXACT_SAMPLE_LIMIT, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * @param exactSampleLimit
+     *            number of samples kept exactly, 0 to always use a histogram
+     * @param significantDigits
+     *            precision of the histogram, between 1 and 5
+     */
+    public Unfrozen(int exactSampleLimit, int significantDigits) {
+      this.exactSampleLimit = exactSampleLimit;
+      this.significantDigits = significantDigits;
+      if (exactSampleLimit <= 0) {
+        histogram = new LogLinearHistogram(significantDigits);
+        samples = null;
+      }
+    }
 
     @Override
     public long get90Line() {
       if (line90 == null) {
-        line90 = getPercentile(.9);
+        selectMedianAnd90Line();
       }
       return line90;
     }
@@ -75,33 +222,165 @@ public abstract class AggregateStatistics {
     @Override
     public long getMedian() {
       if (median == null) {
-        median = getPercentile(.5);
+        selectMedianAnd90Line();
       }
       return median;
     }
 
-    private long getPercentile(double percentile) {
-      if (!samplesSorted) {
-        Collections.sort(samples);
-        samplesSorted = true;
+    private void selectMedianAnd90Line() {
+      long[] values = getPercentiles(new double[] { .5, .9 });
+      median = values[0];
+      line90 = values[1];
+    }
+
+    @Override
+    public long getPercentile(double percentile) {
+      return getPercentiles(new double[] { percentile })[0];
+    }
+
+    /**
+     * Selects all the given percentiles with a single pass over the exact
+     * samples.
+     */
+    @Override
+    public long[] getPercentiles(double[] percentiles) {
+      long[] values = new long[percentiles.length];
+      if (size == 0) {
+        return values;
+      }
+      if (histogram != null) {
+        for (int i = 0; i < percentiles.length; i++) {
+          values[i] = clamp(histogram.getValueAtPercentile(percentiles[i]));
+        }
+        return values;
       }
-      return samples.get((int) (size*percentile));
+      int[] ranks = new int[percentiles.length];
+      for (int i = 0; i < percentiles.length; i++) {
+        ranks[i] = Math.min((int) (size*percentiles[i]), size - 1);
+      }
+      return QuickSelect.select(samples, size, ranks);
     }
 
     public void sample(long sample, boolean error) {
+      sample(sample, error, 0);
+    }
+
+    /**
+     * Records a sample that started at the given time, in epoch milliseconds,
+     * or 0 if it is not known.
+     */
+    public void sample(long sample, boolean error, long start) {
+      if (histogram == null && size >= exactSampleLimit) {
+        histogram = getHistogram();
+        samples = null;
+      }
+      if (histogram != null) {
+        histogram.record(sample);
+      } else {
+        if (size == samples.length) {
+          long[] grown = new long[Math.min(samples.length * 2, exactSampleLimit)];
+          System.arraycopy(samples, 0, grown, 0, size);
+          samples = grown;
+        }
+        samples[size] = sample;
+      }
       total += sample;
       size += 1;
       max = Math.max(max, sample);
       min = Math.min(min, sample);
-      samples.add(sample);
       if (error) {
         errors += 1;
       }
-      samplesSorted = false;
+      if (start > 0) {
+        firstStart = Math.min(firstStart, start);
+        lastEnd = Math.max(lastEnd, start + sample);
+      }
+      line90 = null;
+      median = null;
+    }
+
+    /**
+     * Adds the samples summarized by other statistics to these ones. Counts,
+     * totals, extremes and errors merge exactly, exact samples are kept while
+     * they fit under the limit and histograms are added bucket by bucket.
+     * Statistics read from summaries that predate histograms contribute no
+     * distribution.
+     */
+    public void merge(AggregateStatistics other) {
+      if (other.size == 0) {
+        return;
+      }
+      Unfrozen exact = other instanceof Unfrozen && ((Unfrozen) other).histogram == null
+          ? (Unfrozen) other : null;
+      if (histogram == null && (exact == null || size + other.size > exactSampleLimit)) {
+        histogram = getHistogram();
+        samples = null;
+      }
+      if (histogram != null) {
+        LogLinearHistogram otherHistogram = other.getHistogram();
+        if (otherHistogram != null) {
+          histogram.add(otherHistogram);
+        }
+      } else {
+        if (size + exact.size > samples.length) {
+          long[] grown = new long[Math.min(Math.max(samples.length * 2, size + exact.size),
+              exactSampleLimit)];
+          System.arraycopy(samples, 0, grown, 0, size);
+          samples = grown;
+        }
+        System.arraycopy(exact.samples, 0, samples, size, exact.size);
+      }
+      total += other.total;
+      size += other.size;
+      max = Math.max(max, other.max);
+      min = Math.min(min, other.min);
+      errors += other.errors;
+      firstStart = Math.min(firstStart, other.firstStart);
+      lastEnd = Math.max(lastEnd, other.lastEnd);
       line90 = null;
       median = null;
     }
 
+    /**
+     * Whether percentiles are answered from a histogram rather than from the
+     * exact samples.
+     */
+    public boolean isRecordingHistogram() {
+      return histogram != null;
+    }
+
+    public int getExactSampleLimit() {
+      return exactSampleLimit;
+    }
+
+    /**
+     * Sets the percentiles, in percent, that are kept when these statistics
+     * are frozen, in addition to the median and the 90% line.
+     */
+    public void setTrackedPercentiles(double[] percentiles) {
+      this.trackedPercentiles = percentiles == null ? new double[0] : percentiles;
+    }
+
+    public double[] getTrackedPercentiles() {
+      return trackedPercentiles;
+    }
+
+    /**
+     * Returns the histogram being recorded, or one built from the exact
+     * samples.
+     */
+    @Override
+    public LogLinearHistogram getHistogram() {
+      if (histogram != null) {
+        return histogram;
+      }
+      LogLinearHistogram built = new LogLinearHistogram(significantDigits);
+      for (int i = 0; i < size; i++) {
+        built.record(samples[i]);
+      }
+      return built;
+    }
+
     @Override
     public Frozen asFrozen() {
       return new Frozen(this);
@@ -112,20 +391,101 @@ public abstract class AggregateStatistics {
       return this;
     }
 
+    /**
+     * Persists {@link Unfrozen} and {@link Frozen} statistics as their frozen
+     * values plus the encoded histogram, and reads them back as {@link Frozen}.
+     */
     public static class UnfrozenConverter implements Converter {
       public boolean canConvert(Class clazz) {
-        return Unfrozen.class == clazz;
+        return Unfrozen.class == clazz || Frozen.class == clazz;
       }
 
       public void marshal(Object value, HierarchicalStreamWriter writer,
           MarshallingContext context) {
-        context.convertAnother(((Unfrozen)value).asFrozen());
+        Frozen frozen = ((AggregateStatistics)value).asFrozen();
+        writeNode(writer, "total", String.valueOf(frozen.total));
+        writeNode(writer, "size", String.valueOf(frozen.size));
+        writeNode(writer, "min", String.valueOf(frozen.min));
+        writeNode(writer, "max", String.valueOf(frozen.max));
+        writeNode(writer, "errors", String.valueOf(frozen.errors));
+        writeNode(writer, "line90", String.valueOf(frozen.line90));
+        writeNode(writer, "median", String.valueOf(frozen.median));
+        if (frozen.firstStart <= frozen.lastEnd) {
+          writeNode(writer, "firstStart", String.valueOf(frozen.firstStart));
+          writeNode(writer, "lastEnd", String.valueOf(frozen.lastEnd));
+        }
+        if (frozen.percentiles.length > 0) {
+          StringBuilder sb = new StringBuilder();
+          for (int i = 0; i < frozen.percentiles.length; i++) {
+            if (i > 0) {
+              sb.append(' ');
+            }
+            sb.append(frozen.percentiles[i]).append('=').append(frozen.percentileValues[i]);
+          }
+          writeNode(writer, "percentiles", sb.toString());
+        }
+        if (frozen.histogram != null) {
+          writer.startNode("histogram");
+          writer.addAttribute("digits",
+              String.valueOf(frozen.histogram.getSignificantDigits()));
+          writer.setValue(frozen.histogram.encode());
+          writer.endNode();
+        }
+      }
+
+      private static void writeNode(HierarchicalStreamWriter writer,
+          String name, String value) {
+        writer.startNode(name);
+        writer.setValue(value);
+        writer.endNode();
       }
 
       public Object unmarshal(HierarchicalStreamReader reader,
           UnmarshallingContext context) {
-        Unfrozen unfrozen = new Unfrozen();
-        return (Frozen)context.convertAnother(unfrozen, Frozen.class);
+        Frozen frozen = new Frozen();
+        while (reader.hasMoreChildren()) {
+          reader.moveDown();
+          String name = reader.getNodeName();
+          try {
+            if ("total".equals(name)) {
+              frozen.total = Long.parseLong(reader.getValue());
+            } else if ("size".equals(name)) {
+              frozen.size = Integer.parseInt(reader.getValue());
+            } else if ("min".equals(name)) {
+              frozen.min = Long.parseLong(reader.getValue());
+            } else if ("max".equals(name)) {
+              frozen.max = Long.parseLong(reader.getValue());
+            } else if ("errors".equals(name)) {
+              frozen.errors = Integer.parseInt(reader.getValue());
+            } else if ("line90".equals(name)) {
+              frozen.line90 = Long.parseLong(reader.getValue());
+            } else if ("median".equals(name)) {
+              frozen.median = Long.parseLong(reader.getValue());
+            } else if ("firstStart".equals(name)) {
+              frozen.firstStart = Long.parseLong(reader.getValue());
+            } else if ("lastEnd".equals(name)) {
+              frozen.lastEnd = Long.parseLong(reader.getValue());
+            } else if ("percentiles".equals(name)) {
+              String[] entries = reader.getValue().trim().split(" +");
+              int count = entries[0].length() == 0 ? 0 : entries.length;
+              frozen.percentiles = new double[count];
+              frozen.percentileValues = new long[count];
+              for (int i = 0; i < count; i++) {
+                int separator = entries[i].indexOf('=');
+                frozen.percentiles[i] = Double.parseDouble(entries[i].substring(0, separator));
+                frozen.percentileValues[i] = Long.parseLong(entries[i].substring(separator + 1));
+              }
+            } else if ("histogram".equals(name)) {
+              frozen.histogram = LogLinearHistogram.decode(
+                  Integer.parseInt(reader.getAttribute("digits")),
+                  reader.getValue());
+            }
+          } catch (NumberFormatException exc) {
+            throw new ConversionException("Invalid statistics value for " + name, exc);
+          }
+          reader.moveUp();
+        }
+        return frozen;
       }
     }
   }
@@ -146,9 +506,57 @@ public abstract class AggregateStatistics {
     return size == 0 ? 0 : (double)total / size;
   }
 
+  public long getFirstStart() {
+    return firstStart;
+  }
+
+  public long getLastEnd() {
+    return lastEnd;
+  }
+
+  /**
+   * Returns the samples per second from the start of the first sample to the
+   * end of the last one, or 0 if their start times are not known.
+   */
+  public double getThroughput() {
+    if (firstStart >= lastEnd) {
+      return 0;
+    }
+    return size * 1000.0 / (lastEnd - firstStart);
+  }
+
   abstract public long get90Line();
   abstract public long getMedian();
 
+  /**
+   * Returns the sample value at the given percentile, between 0 and 1.
+   */
+  abstract public long getPercentile(double percentile);
+
+  /**
+   * Returns the sample values at each of the given percentiles.
+   */
+  public long[] getPercentiles(double[] percentiles) {
+    long[] values = new long[percentiles.length];
+    for (int i = 0; i < percentiles.length; i++) {
+      values[i] = getPercentile(percentiles[i]);
+    }
+    return values;
+  }
+
+  /**
+   * Returns the distribution of the samples, or null if it is not known.
+   */
+  abstract public LogLinearHistogram getHistogram();
+
+  /**
+   * Keeps a histogram value within the recorded range, which can only bring it
+   * closer to the exact value.
+   */
+  protected long clamp(long value) {
+    return Math.min(max, Math.max(min, value));
+  }
+
   public long getMax() {
     return max;
   }
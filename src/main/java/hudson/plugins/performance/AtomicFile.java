@@ -0,0 +1,64 @@
+package hudson.plugins.performance;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A file written under a unique temporary name in the directory of its
+ * target, then renamed over it, so that readers see either the previous
+ * content or the new one, never part of it.
+ */
+final class AtomicFile {
+
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private final File target;
+
+  private final File temporary;
+
+  AtomicFile(File target) throws IOException {
+    this.target = target;
+    File dir = target.getAbsoluteFile().getParentFile();
+    dir.mkdirs();
+    // the prefix must be at least three characters long
+    this.temporary = File.createTempFile("." + target.getName() + "-",
+        TEMPORARY_SUFFIX, dir);
+  }
+
+  /**
+   * Returns the file to write instead of the target.
+   */
+  File getTemporaryFile() {
+    return temporary;
+  }
+
+  /**
+   * Replaces the target by the temporary file.
+   */
+  void commit() throws IOException {
+    if (temporary.renameTo(target)) {
+      return;
+    }
+    // some platforms don't rename over an existing file
+    target.delete();
+    if (!temporary.renameTo(target)) {
+      temporary.delete();
+      throw new IOException("Failed to rename " + temporary + " to " + target);
+    }
+  }
+
+  /**
+   * Deletes the temporary file, leaving the target as it was.
+   */
+  void abort() {
+    temporary.delete();
+  }
+
+  /**
+   * Whether a file is the temporary file of another, which listings skip.
+   */
+  static boolean isTemporary(File file) {
+    String name = file.getName();
+    return name.startsWith(".") && name.endsWith(TEMPORARY_SUFFIX);
+  }
+}
@@ -0,0 +1,230 @@
+package hudson.plugins.performance;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Aggregates the attributes JMeter saves besides the duration of a sample:
+ * its latency and connect time, whose percentiles are kept in
+ * {@link LogLinearHistogram}s, the bytes received, the number of active
+ * threads when it ended and the host it ran on. Each attribute is optional
+ * and only aggregated over the samples that have it.
+ */
+public class AttributeStatistics implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Distinct host names kept at most, tests rarely run on more hosts.
+   */
+  public static final int MAX_HOSTS = Integer.getInteger(
+      AttributeStatistics.class.getName() + ".maxHosts", 32);
+
+  private LogLinearHistogram latencies = new LogLinearHistogram(
+      AggregateStatistics.DEFAULT_SIGNIFICANT_DIGITS);
+
+  private long latencyTotal = 0;
+
+  private LogLinearHistogram connects = new LogLinearHistogram(
+      AggregateStatistics.DEFAULT_SIGNIFICANT_DIGITS);
+
+  private long connectTotal = 0;
+
+  private int bytesCount = 0;
+
+  private long bytesTotal = 0;
+
+  private int threadsCount = 0;
+
+  private long allThreadsTotal = 0;
+
+  private int allThreadsMax = 0;
+
+  private long groupThreadsTotal = 0;
+
+  private int groupThreadsMax = 0;
+
+  private final TreeSet<String> hosts = new TreeSet<String>();
+
+  /**
+   * Records the attributes of a sample, negative values and a null host
+   * meaning that the sample doesn't have them.
+   */
+  public void record(long latency, long connect, long bytes, int allThreads,
+      int groupThreads, String host) {
+    if (latency >= 0) {
+      latencies.record(latency);
+      latencyTotal += latency;
+    }
+    if (connect >= 0) {
+      connects.record(connect);
+      connectTotal += connect;
+    }
+    if (bytes >= 0) {
+      bytesCount++;
+      bytesTotal += bytes;
+    }
+    if (allThreads >= 0) {
+      threadsCount++;
+      allThreadsTotal += allThreads;
+      allThreadsMax = Math.max(allThreadsMax, allThreads);
+      groupThreadsTotal += Math.max(0, groupThreads);
+      groupThreadsMax = Math.max(groupThreadsMax, groupThreads);
+    }
+    if (host != null && hosts.size() < MAX_HOSTS) {
+      hosts.add(host);
+    }
+  }
+
+  public void merge(AttributeStatistics other) {
+    latencies.add(other.latencies);
+    latencyTotal += other.latencyTotal;
+    connects.add(other.connects);
+    connectTotal += other.connectTotal;
+    bytesCount += other.bytesCount;
+    bytesTotal += other.bytesTotal;
+    threadsCount += other.threadsCount;
+    allThreadsTotal += other.allThreadsTotal;
+    allThreadsMax = Math.max(allThreadsMax, other.allThreadsMax);
+    groupThreadsTotal += other.groupThreadsTotal;
+    groupThreadsMax = Math.max(groupThreadsMax, other.groupThreadsMax);
+    for (String host : other.hosts) {
+      if (hosts.size() >= MAX_HOSTS) {
+        break;
+      }
+      hosts.add(host);
+    }
+  }
+
+  /**
+   * Whether no sample had any of the attributes.
+   */
+  public boolean isEmpty() {
+    return latencies.getTotalCount() == 0 && connects.getTotalCount() == 0
+        && bytesCount == 0 && threadsCount == 0 && hosts.isEmpty();
+  }
+
+  public boolean hasLatency() {
+    return latencies.getTotalCount() > 0;
+  }
+
+  public long getAverageLatency() {
+    return latencies.getTotalCount() == 0 ? 0 : latencyTotal / latencies.getTotalCount();
+  }
+
+  /**
+   * Latency at a percentile, between 0 and 1.
+   */
+  public long getLatencyPercentile(double percentile) {
+    return latencies.getValueAtPercentile(percentile);
+  }
+
+  public boolean hasConnect() {
+    return connects.getTotalCount() > 0;
+  }
+
+  public long getAverageConnect() {
+    return connects.getTotalCount() == 0 ? 0 : connectTotal / connects.getTotalCount();
+  }
+
+  /**
+   * Connect time at a percentile, between 0 and 1.
+   */
+  public long getConnectPercentile(double percentile) {
+    return connects.getValueAtPercentile(percentile);
+  }
+
+  public boolean hasBytes() {
+    return bytesCount > 0;
+  }
+
+  public long getBytes() {
+    return bytesTotal;
+  }
+
+  public long getKilobytes() {
+    return bytesTotal / 1024;
+  }
+
+  public long getAverageBytes() {
+    return bytesCount == 0 ? 0 : bytesTotal / bytesCount;
+  }
+
+  public boolean hasThreads() {
+    return threadsCount > 0;
+  }
+
+  public int getMaxAllThreads() {
+    return allThreadsMax;
+  }
+
+  public double getAverageAllThreads() {
+    return threadsCount == 0 ? 0 : (double) allThreadsTotal / threadsCount;
+  }
+
+  public String getAverageAllThreadsFormated() {
+    return new DecimalFormat("0.0").format(getAverageAllThreads());
+  }
+
+  public int getMaxGroupThreads() {
+    return groupThreadsMax;
+  }
+
+  public double getAverageGroupThreads() {
+    return threadsCount == 0 ? 0 : (double) groupThreadsTotal / threadsCount;
+  }
+
+  /**
+   * Host names the samples ran on, sorted, at most {@link #MAX_HOSTS}.
+   */
+  public Set<String> getHosts() {
+    return Collections.unmodifiableSet(hosts);
+  }
+
+  /**
+   * Writes these statistics for a {@link SummaryStore}.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    latencies.writeTo(out);
+    out.writeLong(latencyTotal);
+    connects.writeTo(out);
+    out.writeLong(connectTotal);
+    out.writeInt(bytesCount);
+    out.writeLong(bytesTotal);
+    out.writeInt(threadsCount);
+    out.writeLong(allThreadsTotal);
+    out.writeInt(allThreadsMax);
+    out.writeLong(groupThreadsTotal);
+    out.writeInt(groupThreadsMax);
+    out.writeInt(hosts.size());
+    for (String host : hosts) {
+      out.writeUTF(host);
+    }
+  }
+
+  static AttributeStatistics readFrom(DataInput in) throws IOException {
+    AttributeStatistics stats = new AttributeStatistics();
+    stats.latencies = LogLinearHistogram.readFrom(in);
+    stats.latencyTotal = in.readLong();
+    stats.connects = LogLinearHistogram.readFrom(in);
+    stats.connectTotal = in.readLong();
+    stats.bytesCount = in.readInt();
+    stats.bytesTotal = in.readLong();
+    stats.threadsCount = in.readInt();
+    stats.allThreadsTotal = in.readLong();
+    stats.allThreadsMax = in.readInt();
+    stats.groupThreadsTotal = in.readLong();
+    stats.groupThreadsMax = in.readInt();
+    int hostCount = in.readInt();
+    for (int i = 0; i < hostCount; i++) {
+      stats.hosts.add(in.readUTF());
+    }
+    return stats;
+  }
+}
@@ -0,0 +1,154 @@
+package hudson.plugins.performance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Keeps the PNG images of the trend graphs, least recently used first, so
+ * that a graph is rendered once for a given state of the project and then
+ * served from memory until a build records new results.
+ *
+ * <p>
+ * The key of a graph must describe everything it is drawn from. Its hash is
+ * sent as the <code>ETag</code> of the image, so a browser that already has
+ * the image gets a 304 without the graph being looked up at all.
+ */
+public final class ChartCache {
+
+  /**
+   * Bytes of images kept at most.
+   */
+  public static final long MAX_SIZE = Long.getLong(ChartCache.class.getName()
+      + ".maxSize", 8 * 1024 * 1024);
+
+  private static final ChartCache INSTANCE = new ChartCache(MAX_SIZE);
+
+  private final long maxSize;
+
+  private final LinkedHashMap<String, Image> images = new LinkedHashMap<String, Image>(
+      16, 0.75f, true);
+
+  private long size = 0;
+
+  /**
+   * Draws a graph on a cache miss.
+   */
+  public interface Source {
+    JFreeChart createChart() throws IOException;
+  }
+
+  ChartCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public static ChartCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Sends the image of a graph, rendering it only if it isn't cached.
+   *
+   * @param key
+   *            identifies the graph and the data it is drawn from
+   */
+  public void generateGraph(StaplerRequest request, StaplerResponse response,
+      String key, Source source, int defaultWidth, int defaultHeight)
+      throws IOException {
+    int width = getSize(request, "width", defaultWidth);
+    int height = getSize(request, "height", defaultHeight);
+    key = key + '|' + width + 'x' + height;
+    String etag = getETag(key);
+
+    response.setHeader("Cache-Control", "no-cache");
+    if (etag.equals(request.getHeader("If-None-Match"))) {
+      response.setHeader("ETag", etag);
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    Image image = get(key);
+    if (image == null) {
+      ByteArrayOutputStream png = new ByteArrayOutputStream();
+      ChartUtilities.writeChartAsPNG(png, source.createChart(), width, height);
+      image = new Image(png.toByteArray(), System.currentTimeMillis());
+      put(key, image);
+    }
+
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", image.lastModified);
+    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    if (ifModifiedSince >= 0 && image.lastModified / 1000 <= ifModifiedSince / 1000) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    response.setContentType("image/png");
+    response.setContentLength(image.png.length);
+    OutputStream out = response.getOutputStream();
+    out.write(image.png);
+    out.flush();
+  }
+
+  private static int getSize(StaplerRequest request, String name,
+      int defaultValue) {
+    String value = request.getParameter(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Math.max(1, Integer.parseInt(value));
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  static String getETag(String key) {
+    long hash = 1125899906842597L;
+    for (int i = 0; i < key.length(); i++) {
+      hash = 31 * hash + key.charAt(i);
+    }
+    return '"' + Long.toHexString(hash) + '"';
+  }
+
+  synchronized Image get(String key) {
+    return images.get(key);
+  }
+
+  synchronized void put(String key, Image image) {
+    Image previous = images.put(key, image);
+    if (previous != null) {
+      size -= previous.png.length;
+    }
+    size += image.png.length;
+    Iterator<Map.Entry<String, Image>> eldest = images.entrySet().iterator();
+    while (size > maxSize && eldest.hasNext()) {
+      size -= eldest.next().getValue().png.length;
+      eldest.remove();
+    }
+  }
+
+  synchronized long getSize() {
+    return size;
+  }
+
+  static final class Image {
+    final byte[] png;
+
+    final long lastModified;
+
+    Image(byte[] png, long lastModified) {
+      this.png = png;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,473 @@
+package hudson.plugins.performance;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scans JMeter results saved as CSV straight from the bytes of a channel.
+ * Fields are located and converted in place, numbers are parsed from their
+ * digits and labels are matched against the labels seen before, so that no
+ * <code>String</code> is created per field or per row.
+ *
+ * <p>
+ * Only the <code>timeStamp</code>, <code>elapsed</code>, <code>label</code>
+ * and <code>success</code> columns are required. The <code>Latency</code>,
+ * <code>Connect</code>, <code>bytes</code>, <code>allThreads</code>,
+ * <code>grpThreads</code> and <code>Hostname</code> columns are read when the
+ * header has them. Time stamps must be saved in milliseconds, which is
+ * JMeter's default.
+ */
+public class CsvJtlScanner {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Column layout of JMeter CSV results written without a header row.
+   */
+  private static final String DEFAULT_HEADER = "timeStamp,elapsed,label,responseCode,"
+      + "responseMessage,threadName,dataType,success";
+
+  private final byte delimiter;
+
+  private final int timestampColumn;
+
+  private final int elapsedColumn;
+
+  private final int labelColumn;
+
+  private final int successColumn;
+
+  private final int latencyColumn;
+
+  private final int connectColumn;
+
+  private final int bytesColumn;
+
+  private final int allThreadsColumn;
+
+  private final int groupThreadsColumn;
+
+  private final int hostColumn;
+
+  /**
+   * Last of the required columns, rows must have at least as many.
+   */
+  private final int lastColumn;
+
+  /**
+   * Last of the columns read, rows may end before the optional ones.
+   */
+  private final int lastReadColumn;
+
+  private final int headerLength;
+
+  private final LabelTable labels = new LabelTable();
+
+  private final LabelTable hosts = new LabelTable();
+
+  private final List<String> hostNames = new ArrayList<String>();
+
+  private final SampleBatch batch;
+
+  private final SampleSink sink;
+
+  private long records = 0;
+
+  /**
+   * Reports a row that doesn't hold a valid sample.
+   */
+  public static class FormatException extends Exception {
+    public FormatException(String msg) {
+      super(msg);
+    }
+  }
+
+  /**
+   * @param firstLine
+   *            the beginning of the file, holding at least its first line
+   */
+  public CsvJtlScanner(byte[] firstLine, int length, SampleSink sink)
+      throws FormatException {
+    int end = 0;
+    while (end < length && firstLine[end] != '\n') {
+      end++;
+    }
+    String line = decode(firstLine, 0, end > 0 && firstLine[end - 1] == '\r' ? end - 1 : end);
+    boolean hasHeader = line.length() > 0 && !Character.isDigit(line.charAt(0));
+    this.headerLength = hasHeader ? Math.min(end + 1, length) : 0;
+    if (!hasHeader) {
+      line = DEFAULT_HEADER;
+    }
+    this.delimiter = (byte) (line.indexOf(',') < 0 && line.indexOf('\t') >= 0 ? '\t' : ',');
+    String[] columns = line.split(delimiter == '\t' ? "\t" : ",");
+    this.timestampColumn = indexOf(columns, "timeStamp");
+    this.elapsedColumn = indexOf(columns, "elapsed");
+    this.labelColumn = indexOf(columns, "label");
+    this.successColumn = indexOf(columns, "success");
+    this.lastColumn = Math.max(Math.max(timestampColumn, elapsedColumn),
+        Math.max(labelColumn, successColumn));
+    this.latencyColumn = optionalIndexOf(columns, "Latency");
+    this.connectColumn = optionalIndexOf(columns, "Connect");
+    this.bytesColumn = optionalIndexOf(columns, "bytes");
+    this.allThreadsColumn = optionalIndexOf(columns, "allThreads");
+    this.groupThreadsColumn = optionalIndexOf(columns, "grpThreads");
+    this.hostColumn = optionalIndexOf(columns, "Hostname");
+    this.lastReadColumn = Math.max(lastColumn, Math.max(
+        Math.max(latencyColumn, connectColumn),
+        Math.max(Math.max(bytesColumn, allThreadsColumn),
+            Math.max(groupThreadsColumn, hostColumn))));
+    this.sink = sink;
+    this.batch = new SampleBatch(sink);
+  }
+
+  private static int indexOf(String[] columns, String name) throws FormatException {
+    int index = optionalIndexOf(columns, name);
+    if (index < 0) {
+      throw new FormatException("missing column '" + name + "' in the CSV header");
+    }
+    return index;
+  }
+
+  private static int optionalIndexOf(String[] columns, String name) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].trim().equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Number of bytes taken by the header row, 0 if the file has none.
+   */
+  public int getHeaderLength() {
+    return headerLength;
+  }
+
+  /**
+   * Number of rows scanned so far.
+   */
+  public long getRecordCount() {
+    return records;
+  }
+
+  /**
+   * Scans every row of the channel, which must be positioned after the
+   * header, and passes the samples to the sink.
+   *
+   * @return the number of bytes read
+   */
+  public long scan(ReadableByteChannel channel) throws IOException, FormatException {
+    return scan(channel, Long.MAX_VALUE);
+  }
+
+  /**
+   * Scans the rows of the channel that begin within its next
+   * <code>length</code> bytes. The channel must be positioned at the
+   * beginning of a row, and the last row is read to its end even if it goes
+   * past <code>length</code>.
+   *
+   * @return the number of bytes taken by the rows scanned, which is where the
+   *         next row begins
+   */
+  public long scan(ReadableByteChannel channel, long length) throws IOException,
+      FormatException {
+    return scan(channel, length, false);
+  }
+
+  /**
+   * Scans the rows of a file that is still being written, leaving a last row
+   * without its line break to the next scan.
+   *
+   * @return the number of bytes taken by the complete rows
+   */
+  public long scanCompleteRows(ReadableByteChannel channel) throws IOException,
+      FormatException {
+    return scan(channel, Long.MAX_VALUE, true);
+  }
+
+  private long scan(ReadableByteChannel channel, long length, boolean growing)
+      throws IOException, FormatException {
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    long consumed = 0;
+    boolean eof = false;
+    boolean done = false;
+    while (!eof && !done) {
+      eof = channel.read(buffer) < 0;
+      byte[] bytes = buffer.array();
+      int limit = buffer.position();
+      int start = 0;
+      while (start < limit) {
+        if (consumed + start >= length) {
+          done = true;
+          break;
+        }
+        int next = scanRecord(bytes, start, limit, eof && !growing);
+        if (next < 0) {
+          break;
+        }
+        start = next;
+      }
+      consumed += start;
+      if (start == 0 && limit == buffer.capacity()) {
+        // a single row is longer than the buffer
+        ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      } else {
+        buffer.limit(limit);
+        buffer.position(start);
+        buffer.compact();
+      }
+    }
+    batch.flush();
+    return consumed;
+  }
+
+  /**
+   * Parses the row beginning at <code>start</code>.
+   *
+   * @return the offset of the next row, or -1 if the row is not complete
+   *         before <code>limit</code>
+   */
+  int scanRecord(byte[] bytes, int start, int limit, boolean eof)
+      throws FormatException {
+    if (bytes[start] == '\n') {
+      return start + 1;
+    }
+    if (bytes[start] == '\r' && start + 1 < limit && bytes[start + 1] == '\n') {
+      return start + 2;
+    }
+    long timestamp = 0;
+    long elapsed = 0;
+    boolean success = false;
+    int labelId = -1;
+    long latency = -1;
+    long connect = -1;
+    long bytesReceived = -1;
+    int allThreads = -1;
+    int groupThreads = -1;
+    String host = null;
+    int column = 0;
+    int pos = start;
+    while (true) {
+      // locate the field [fieldStart, fieldEnd), honouring quotes
+      int fieldStart = pos;
+      boolean quoted = pos < limit && bytes[pos] == '"';
+      if (quoted) {
+        pos++;
+        while (true) {
+          if (pos >= limit) {
+            return -1;
+          }
+          if (bytes[pos] == '"') {
+            if (pos + 1 < limit && bytes[pos + 1] == '"') {
+              pos += 2;
+              continue;
+            }
+            if (pos + 1 >= limit && !eof) {
+              return -1;
+            }
+            pos++;
+            break;
+          }
+          pos++;
+        }
+      }
+      while (pos < limit && bytes[pos] != delimiter && bytes[pos] != '\n') {
+        pos++;
+      }
+      if (pos >= limit && !eof) {
+        return -1;
+      }
+      int fieldEnd = pos;
+      if (fieldEnd > fieldStart && bytes[fieldEnd - 1] == '\r'
+          && (pos >= limit || bytes[pos] == '\n')) {
+        fieldEnd--;
+      }
+      if (column <= lastReadColumn) {
+        if (column == timestampColumn) {
+          timestamp = parseLong(bytes, fieldStart, fieldEnd, "timeStamp");
+        } else if (column == elapsedColumn) {
+          elapsed = parseLong(bytes, fieldStart, fieldEnd, "elapsed");
+        } else if (column == successColumn) {
+          success = fieldEnd > fieldStart && (bytes[fieldStart] == 't' || bytes[fieldStart] == 'T');
+        } else if (column == labelColumn) {
+          labelId = getLabelId(bytes, fieldStart, fieldEnd, quoted);
+        } else if (column == latencyColumn) {
+          latency = parseOptionalLong(bytes, fieldStart, fieldEnd);
+        } else if (column == connectColumn) {
+          connect = parseOptionalLong(bytes, fieldStart, fieldEnd);
+        } else if (column == bytesColumn) {
+          bytesReceived = parseOptionalLong(bytes, fieldStart, fieldEnd);
+        } else if (column == allThreadsColumn) {
+          allThreads = (int) parseOptionalLong(bytes, fieldStart, fieldEnd);
+        } else if (column == groupThreadsColumn) {
+          groupThreads = (int) parseOptionalLong(bytes, fieldStart, fieldEnd);
+        } else if (column == hostColumn && fieldEnd > fieldStart) {
+          host = getHost(bytes, fieldStart, fieldEnd, quoted);
+        }
+      }
+      column++;
+      if (pos >= limit || bytes[pos] == '\n') {
+        break;
+      }
+      pos++;
+    }
+    int next = pos >= limit ? limit : pos + 1;
+    if (column <= lastColumn) {
+      if (pos >= limit) {
+        // the last row was cut short, for instance because the test was killed
+        return next;
+      }
+      throw new FormatException("row " + (records + 1) + " has only " + column + " columns");
+    }
+    records++;
+    batch.add(labelId, timestamp, elapsed, success, latency, connect,
+        bytesReceived, allThreads, groupThreads, host);
+    return next;
+  }
+
+  private long parseLong(byte[] bytes, int from, int to, String column)
+      throws FormatException {
+    if (from == to) {
+      throw new FormatException("empty " + column + " in row " + (records + 1));
+    }
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new FormatException("invalid " + column + " '" + decode(bytes, from, to)
+            + "' in row " + (records + 1) + ", time stamps must be saved in milliseconds");
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Parses an optional number, -1 if the field is empty or not a number.
+   */
+  private static long parseOptionalLong(byte[] bytes, int from, int to) {
+    if (from == to) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private String getHost(byte[] bytes, int from, int to, boolean quoted) {
+    int hash = 1;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    int slot = hosts.find(bytes, from, to, hash);
+    if (hosts.keys[slot] == null) {
+      String host = quoted
+          ? decode(bytes, from + 1, to - 1).replace("\"\"", "\"")
+          : decode(bytes, from, to);
+      hostNames.add(host);
+      // the table may grow, which moves the slot
+      hosts.put(slot, bytes, from, to, hash, hostNames.size() - 1);
+      return host;
+    }
+    return hostNames.get(hosts.ids[slot]);
+  }
+
+  private int getLabelId(byte[] bytes, int from, int to, boolean quoted) {
+    int hash = 1;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    int slot = labels.find(bytes, from, to, hash);
+    if (labels.keys[slot] == null) {
+      String label = quoted
+          ? decode(bytes, from + 1, to - 1).replace("\"\"", "\"")
+          : decode(bytes, from, to);
+      int labelId = sink.getLabelId(label);
+      // the table may grow, which moves the slot
+      labels.put(slot, bytes, from, to, hash, labelId);
+      return labelId;
+    }
+    return labels.ids[slot];
+  }
+
+  private static String decode(byte[] bytes, int from, int to) {
+    try {
+      return new String(bytes, from, to - from, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Open addressing table from the raw bytes of a label to its id.
+   */
+  private static final class LabelTable {
+    byte[][] keys = new byte[64][];
+    int[] hashes = new int[64];
+    int[] ids = new int[64];
+    int size = 0;
+
+    int find(byte[] bytes, int from, int to, int hash) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (keys[slot] != null) {
+        if (hashes[slot] == hash && matches(keys[slot], bytes, from, to)) {
+          return slot;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private static boolean matches(byte[] key, byte[] bytes, int from, int to) {
+      if (key.length != to - from) {
+        return false;
+      }
+      for (int i = 0; i < key.length; i++) {
+        if (key[i] != bytes[from + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void put(int slot, byte[] bytes, int from, int to, int hash, int id) {
+      byte[] key = new byte[to - from];
+      System.arraycopy(bytes, from, key, 0, key.length);
+      keys[slot] = key;
+      hashes[slot] = hash;
+      ids[slot] = id;
+      size++;
+      if (size * 2 > keys.length) {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldIds = ids;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[keys.length];
+        ids = new int[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+          if (oldKeys[i] != null) {
+            int newSlot = find(oldKeys[i], 0, oldKeys[i].length, oldHashes[i]);
+            keys[newSlot] = oldKeys[i];
+            hashes[newSlot] = oldHashes[i];
+            ids[newSlot] = oldIds[i];
+          }
+        }
+      }
+    }
+  }
+}
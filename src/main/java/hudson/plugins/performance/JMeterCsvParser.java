@@ -0,0 +1,267 @@
+package hudson.plugins.performance;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.util.IOException2;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Parser for JMeter results saved as CSV. Large files are split in parts
+ * parsed on several cores.
+ * 
+ * @see CsvJtlScanner
+ */
+public class JMeterCsvParser extends PerformanceReportParser {
+
+  /**
+   * Bytes read ahead to find the header row.
+   */
+  private static final int HEADER_SIZE = 64 * 1024;
+
+  /**
+   * Files are split in parts of at least this many bytes, parsed
+   * concurrently.
+   */
+  private static final long SPLIT_SIZE = Long.getLong(JMeterCsvParser.class.getName()
+      + ".splitSize", 64L * 1024 * 1024);
+
+  @Extension
+  public static class DescriptorImpl extends PerformanceReportParserDescriptor {
+    @Override
+    public String getDisplayName() {
+      return "JMeter CSV";
+    }
+  }
+
+  @DataBoundConstructor
+  public JMeterCsvParser(String glob) {
+    super(glob);
+  }
+
+  @Override
+  public String getDefaultGlobPattern() {
+    return "**/*.csv";
+  }
+
+  @Override
+  public PerformanceReport parse(AbstractBuild<?, ?> build,
+      File report, TaskListener listener) throws IOException, ParseException {
+    return parse(build, report, listener, SPLIT_SIZE);
+  }
+
+  /**
+   * Parses a report split in parts of at least <code>splitSize</code> bytes.
+   */
+  PerformanceReport parse(AbstractBuild<?, ?> build, File report,
+      TaskListener listener, long splitSize) throws IOException, ParseException {
+    PrintStream logger = listener.getLogger();
+    logger.println("Performance: Parsing JMeter CSV report file " + report.getName());
+    try {
+      byte[] header = readHeader(report);
+      PerformanceReport r = null;
+      // a compressed report can only be read from its beginning
+      int parts = isCompressed(report) ? 1 : (int) Math.min(
+          ParallelReportParser.THREADS, report.length() / Math.max(1, splitSize));
+      if (parts > 1) {
+        r = parseParts(report, header, parts);
+        if (r == null) {
+          logger.println("Performance: Some rows of " + report.getName()
+              + " span several lines, parsing it in a single pass");
+        }
+      }
+      if (r == null) {
+        r = new PerformanceReport();
+        CsvJtlScanner scanner = new CsvJtlScanner(header, header.length, r);
+        scan(report, scanner, scanner.getHeaderLength(), Long.MAX_VALUE);
+      }
+      r.setBuild(build);
+      r.setReportFileName(getReportFileName(report));
+      return r;
+    } catch (CsvJtlScanner.FormatException e) {
+      logger.println("Performance: Failed to parse " + report + ": "
+          + e.getMessage());
+      throw new ParseException(report, e.getMessage());
+    }
+  }
+
+  static byte[] readHeader(File report) throws IOException {
+    InputStream in = openReport(report);
+    try {
+      ReadableByteChannel channel = Channels.newChannel(in);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // fill the header buffer
+      }
+      byte[] bytes = new byte[header.position()];
+      System.arraycopy(header.array(), 0, bytes, 0, bytes.length);
+      return bytes;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long scan(File report, CsvJtlScanner scanner, long start,
+      long length) throws IOException, CsvJtlScanner.FormatException {
+    if (isCompressed(report)) {
+      InputStream in = openReport(report);
+      try {
+        for (long skipped = 0; skipped < start;) {
+          long n = in.skip(start - skipped);
+          if (n <= 0) {
+            return 0;
+          }
+          skipped += n;
+        }
+        return scanner.scan(Channels.newChannel(in), length);
+      } finally {
+        in.close();
+      }
+    }
+    FileInputStream in = new FileInputStream(report);
+    try {
+      FileChannel channel = in.getChannel();
+      channel.position(start);
+      return scanner.scan(channel, length);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Splits the file after line breaks into parts that are parsed
+   * concurrently, then merged in order.
+   * 
+   * @return the merged report, or null if a part didn't begin on a row, which
+   *         happens when a quoted field holds a line break, or if a row is
+   *         invalid, so that the file is parsed again in a single pass
+   */
+  private static PerformanceReport parseParts(final File report,
+      final byte[] header, int parts) throws IOException,
+      CsvJtlScanner.FormatException {
+    long headerLength = new CsvJtlScanner(header, header.length,
+        new PerformanceReport()).getHeaderLength();
+    long size = report.length();
+    final long[] starts = new long[parts + 1];
+    starts[0] = headerLength;
+    starts[parts] = size;
+    FileInputStream in = new FileInputStream(report);
+    try {
+      FileChannel channel = in.getChannel();
+      for (int i = 1; i < parts; i++) {
+        starts[i] = nextRow(channel, Math.max(starts[i - 1],
+            headerLength + (size - headerLength) * i / parts));
+      }
+    } finally {
+      in.close();
+    }
+
+    List<Future<PerformanceReport>> futures = new ArrayList<Future<PerformanceReport>>();
+    for (int i = 0; i < parts; i++) {
+      final long start = starts[i];
+      final long end = starts[i + 1];
+      final boolean last = i == parts - 1;
+      futures.add(ParallelReportParser.getSplitPool().submit(
+          new Callable<PerformanceReport>() {
+            public PerformanceReport call() throws Exception {
+              PerformanceReport part = new PerformanceReport();
+              boolean parsed = false;
+              try {
+                CsvJtlScanner scanner = new CsvJtlScanner(header, header.length, part);
+                long consumed = scan(report, scanner, start, end - start);
+                parsed = last || start + consumed == end;
+              } finally {
+                if (!parsed) {
+                  part.discardSamples();
+                }
+              }
+              return parsed ? part : null;
+            }
+          }));
+    }
+
+    PerformanceReport r = new PerformanceReport();
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        PerformanceReport part = futures.get(i).get();
+        if (part == null) {
+          r.discardSamples();
+          cancel(futures);
+          return null;
+        }
+        r.merge(part);
+        futures.set(i, null);
+      }
+      return r;
+    } catch (InterruptedException e) {
+      r.discardSamples();
+      cancel(futures);
+      throw new InterruptedIOException("Interrupted while parsing " + report);
+    } catch (ExecutionException e) {
+      r.discardSamples();
+      cancel(futures);
+      if (e.getCause() instanceof CsvJtlScanner.FormatException) {
+        return null;
+      }
+      throw new IOException2("Failed to parse " + report, e.getCause());
+    }
+  }
+
+  private static void cancel(List<Future<PerformanceReport>> futures) {
+    for (Future<PerformanceReport> future : futures) {
+      if (future != null && !future.cancel(true)) {
+        // the part is parsed already, the samples it spilled are deleted
+        try {
+          PerformanceReport part = future.get();
+          if (part != null) {
+            part.discardSamples();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          // the part deleted them when it failed
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the first offset from <code>position</code> that follows a line
+   * break, or the size of the file.
+   */
+  private static long nextRow(FileChannel channel, long position)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    long offset = position - 1;
+    while (true) {
+      buffer.clear();
+      int n = channel.read(buffer, offset);
+      if (n < 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < n; i++) {
+        if (buffer.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += n;
+    }
+  }
+}
@@ -12,12 +12,9 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -49,21 +46,6 @@ public class JMeterParser extends PerformanceReportParser {
     return "**/*.jtl";
   }
 
-  @Override
-  public Collection<PerformanceReport> parse(AbstractBuild<?, ?> build,
-      Collection<File> reports, TaskListener listener) throws IOException {
-    List<PerformanceReport> result = new ArrayList<PerformanceReport>();
-
-    for (File f : reports) {
-      try {
-        result.add(parse(build, f, listener));
-      } catch (ParseException e) {
-        // Don't add this report to the results
-      }
-    }
-    return result;
-  }
-
   @Override
   public PerformanceReport parse(AbstractBuild<?, ?> build,
       File report, TaskListener listener) throws IOException, ParseException {
@@ -72,15 +54,27 @@ public class JMeterParser extends PerformanceReportParser {
     factory.setValidating(false);
     factory.setNamespaceAware(false);
     PrintStream logger = listener.getLogger();
+    InputStream in = openReport(report);
     try {
       SAXParser parser = factory.newSAXParser();
       final PerformanceReport r = new PerformanceReport();
       r.setBuild(build);
-      r.setReportFileName(report.getName());
+      r.setReportFileName(getReportFileName(report));
       logger.println("Performance: Parsing JMeter report file " + report.getName());
-      parser.parse(report, new DefaultHandler() {
-        HttpSample currentSample;
+      final SampleBatch batch = new SampleBatch(r);
+      parser.parse(in, new DefaultHandler() {
+        int currentLabelId;
+        long currentTimestamp;
+        long currentElapsed;
+        boolean currentSuccessful;
+        long currentLatency;
+        long currentConnect;
+        long currentBytes;
+        int currentAllThreads;
+        int currentGroupThreads;
+        String currentHost;
         int counter = 0;
+        final Map<String, String> hosts = new HashMap<String, String>();
 
         /**
          * Performance XML log format is in
@@ -95,25 +89,38 @@ public class JMeterParser extends PerformanceReportParser {
          * handle: v2.0 = "label", "timeStamp", "time", "success"
          * v2.1 = "lb", "ts", "t", "s"
          * 
+         * The optional "lt", "connect", "by", "na", "ng" and "hn"
+         * attributes of v2.1 are recorded when they are saved.
          */
         @Override
         public void startElement(String uri, String localName, String qName,
             Attributes attributes) throws SAXException {
           if ("httpSample".equalsIgnoreCase(qName)
               || "sample".equalsIgnoreCase(qName)) {
-            HttpSample sample = new HttpSample();
-            sample.setDate(new Date(
-                Long.valueOf(attributes.getValue("ts") != null
-                    ? attributes.getValue("ts")
-                    : attributes.getValue("timeStamp"))));
-            sample.setDuration(Long.valueOf(attributes.getValue("t") != null
-                ? attributes.getValue("t") : attributes.getValue("time")));
-            sample.setSuccessful(Boolean.valueOf(attributes.getValue("s") != null
-                ? attributes.getValue("s") : attributes.getValue("success")));
-            sample.setUri(attributes.getValue("lb") != null
-                ? attributes.getValue("lb") : attributes.getValue("label"));
             if (counter == 0) {
-              currentSample = sample;
+              currentTimestamp = Long.parseLong(attributes.getValue("ts") != null
+                  ? attributes.getValue("ts") : attributes.getValue("timeStamp"));
+              currentElapsed = Long.parseLong(attributes.getValue("t") != null
+                  ? attributes.getValue("t") : attributes.getValue("time"));
+              currentSuccessful = Boolean.valueOf(attributes.getValue("s") != null
+                  ? attributes.getValue("s") : attributes.getValue("success"));
+              currentLabelId = r.getLabelId(attributes.getValue("lb") != null
+                  ? attributes.getValue("lb") : attributes.getValue("label"));
+              currentLatency = parseOptional(attributes.getValue("lt"));
+              currentConnect = parseOptional(attributes.getValue("connect"));
+              currentBytes = parseOptional(attributes.getValue("by"));
+              currentAllThreads = (int) parseOptional(attributes.getValue("na"));
+              currentGroupThreads = (int) parseOptional(attributes.getValue("ng"));
+              currentHost = attributes.getValue("hn");
+              if (currentHost != null) {
+                // the host of every sample is one of a few
+                String host = hosts.get(currentHost);
+                if (host == null) {
+                  hosts.put(currentHost, currentHost);
+                } else {
+                  currentHost = host;
+                }
+              }
             }
             counter++;
           }
@@ -124,17 +131,28 @@ public class JMeterParser extends PerformanceReportParser {
           if ("httpSample".equalsIgnoreCase(qName)
               || "sample".equalsIgnoreCase(qName)) {
             if (counter == 1) {
-              try {
-                r.addSample(currentSample);
-              } catch (SAXException e) {
-                e.printStackTrace();
-              }
+              batch.add(currentLabelId, currentTimestamp, currentElapsed,
+                  currentSuccessful, currentLatency, currentConnect,
+                  currentBytes, currentAllThreads, currentGroupThreads,
+                  currentHost);
             }
             counter--;
           }
         }
 
+        private long parseOptional(String value) {
+          if (value == null) {
+            return -1;
+          }
+          try {
+            return Long.parseLong(value);
+          } catch (NumberFormatException e) {
+            return -1;
+          }
+        }
+
       });
+      batch.flush();
       return r;
     } catch (ParserConfigurationException e) {
       throw new IOException2("Failed to create parser ", e);
@@ -142,6 +160,8 @@ public class JMeterParser extends PerformanceReportParser {
       logger.println("Performance: Failed to parse " + report + ": "
           + e.getMessage());
       throw new ParseException(report, e.getMessage());
+    } finally {
+      in.close();
     }
   }
 }
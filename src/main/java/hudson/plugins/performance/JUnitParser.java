@@ -12,11 +12,8 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Date;
-import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -47,21 +44,6 @@ public class JUnitParser extends JMeterParser {
     return "**/TEST-*.xml";
   }
 
-  @Override
-  public Collection<PerformanceReport> parse(AbstractBuild<?, ?> build,
-      Collection<File> reports, TaskListener listener) throws IOException {
-    List<PerformanceReport> result = new ArrayList<PerformanceReport>();
-
-    for (File f : reports) {
-      try {
-        result.add(parse(build, f, listener));
-      } catch (ParseException e) {
-        // Don't add this report to the results
-      }
-    }
-    return result;
-  }
-
   @Override
   public PerformanceReport parse(AbstractBuild<?, ?> build,
       File report, TaskListener listener) throws IOException, ParseException {
@@ -70,15 +52,19 @@ public class JUnitParser extends JMeterParser {
     factory.setValidating(false);
     factory.setNamespaceAware(false);
     PrintStream logger = listener.getLogger();
+    InputStream in = openReport(report);
 
     try {
       SAXParser parser = factory.newSAXParser();
       final PerformanceReport r = new PerformanceReport();
       r.setBuild(build);
-      r.setReportFileName(report.getName());
+      r.setReportFileName(getReportFileName(report));
       logger.println("Performance: Parsing JUnit report file " + report.getName());
-      parser.parse(report, new DefaultHandler() {
-        private HttpSample currentSample;
+      final SampleBatch batch = new SampleBatch(r);
+      parser.parse(in, new DefaultHandler() {
+        private int currentLabelId;
+        private long currentDuration;
+        private boolean currentSuccessful;
         private int status;
 
         @Override
@@ -86,7 +72,7 @@ public class JUnitParser extends JMeterParser {
             throws SAXException {
           if (("testsuite".equalsIgnoreCase(qName) || "testcase".equalsIgnoreCase(qName))
               && status != 0) {
-            r.addSample(currentSample);
+            addCurrentSample();
             status = 0;
           }
         }
@@ -101,23 +87,26 @@ public class JUnitParser extends JMeterParser {
             Attributes attributes) throws SAXException {
           if ("testcase".equalsIgnoreCase(qName)) {
             if (status != 0) {
-              r.addSample(currentSample);
+              addCurrentSample();
             }
             status = 1;
-            currentSample = new HttpSample();
-            currentSample.setDate(new Date(0));
             String time = attributes.getValue("time");
             double duration = Double.parseDouble(time);
-            currentSample.setDuration((long) (duration * 1000));
-            currentSample.setSuccessful(true);
-            currentSample.setUri(attributes.getValue("name"));
+            currentDuration = (long) (duration * 1000);
+            currentSuccessful = true;
+            currentLabelId = r.getLabelId(attributes.getValue("name"));
           } else if ("failure".equalsIgnoreCase(qName) && status != 0) {
-            currentSample.setSuccessful(false);
-            r.addSample(currentSample);
+            currentSuccessful = false;
+            addCurrentSample();
             status = 0;
           }
         }
+
+        private void addCurrentSample() {
+          batch.add(currentLabelId, 0, currentDuration, currentSuccessful);
+        }
       });
+      batch.flush();
       return r;
     } catch (ParserConfigurationException e) {
       throw new IOException2("Failed to create parser ", e);
@@ -125,6 +114,8 @@ public class JUnitParser extends JMeterParser {
       logger.println("Performance: Failed to parse " + report + ": "
           + e.getMessage());
       throw new ParseException(report, e.getMessage());
+    } finally {
+      in.close();
     }
   }
 }
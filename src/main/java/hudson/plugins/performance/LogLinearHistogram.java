@@ -0,0 +1,236 @@
+package hudson.plugins.performance;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.StringTokenizer;
+
+/**
+ * Records non-negative sample values into log-linear buckets, in the style of
+ * HdrHistogram, so that any percentile can be answered from a bucket array
+ * whose size depends only on the precision and the largest value recorded,
+ * never on the number of samples.
+ *
+ * <p>
+ * With <code>significantDigits</code> digits of precision, values below
+ * <code>2 * 10^significantDigits</code> are recorded exactly, and any other
+ * value is reported no higher than itself and lower by at most
+ * <code>10^-significantDigits</code> of it.
+ */
+public class LogLinearHistogram implements Serializable {
+
+  private final int significantDigits;
+
+  private final int subBucketHalfCountMagnitude;
+
+  private final int subBucketHalfCount;
+
+  private final long subBucketMask;
+
+  private final int leadingZeroCountBase;
+
+  private int[] counts = new int[0];
+
+  private int totalCount = 0;
+
+  public LogLinearHistogram(int significantDigits) {
+    if (significantDigits < 1 || significantDigits > 5) {
+      throw new IllegalArgumentException(
+          "significantDigits must be between 1 and 5: " + significantDigits);
+    }
+    this.significantDigits = significantDigits;
+    long largestSingleUnitValue = 2;
+    for (int i = 0; i < significantDigits; i++) {
+      largestSingleUnitValue *= 10;
+    }
+    int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestSingleUnitValue - 1);
+    this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+    this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+    this.subBucketMask = (1L << subBucketCountMagnitude) - 1;
+    this.leadingZeroCountBase = 64 - subBucketCountMagnitude;
+  }
+
+  public int getSignificantDigits() {
+    return significantDigits;
+  }
+
+  public int getTotalCount() {
+    return totalCount;
+  }
+
+  public void record(long value) {
+    recordCount(value, 1);
+  }
+
+  public void recordCount(long value, int count) {
+    int index = countsIndex(Math.max(0, value));
+    if (index >= counts.length) {
+      int[] grown = new int[Math.max(index + 1, counts.length * 2)];
+      System.arraycopy(counts, 0, grown, 0, counts.length);
+      counts = grown;
+    }
+    counts[index] += count;
+    totalCount += count;
+  }
+
+  /**
+   * Adds all the counts of another histogram to this one. Histograms with the
+   * same precision merge without any loss.
+   */
+  public void add(LogLinearHistogram other) {
+    for (int i = 0; i < other.counts.length; i++) {
+      if (other.counts[i] != 0) {
+        recordCount(other.valueFromIndex(i), other.counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the lowest value equivalent to the sample at the given percentile,
+   * using the same rank as an exact sorted lookup: the sample at position
+   * <code>(int) (totalCount * percentile)</code>.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    int rank = Math.min((int) (totalCount * percentile), totalCount - 1);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen > rank) {
+        return valueFromIndex(i);
+      }
+    }
+    return valueFromIndex(counts.length - 1);
+  }
+
+  /**
+   * Number of buckets, some of them possibly empty. The buckets are in
+   * increasing order of value, and histograms with the same precision share
+   * the same buckets.
+   */
+  int getBucketCount() {
+    return counts.length;
+  }
+
+  int getCountAtBucket(int bucket) {
+    return counts[bucket];
+  }
+
+  /**
+   * Lowest value recorded in a bucket.
+   */
+  long getValueAtBucket(int bucket) {
+    return valueFromIndex(bucket);
+  }
+
+  private int countsIndex(long value) {
+    int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+    int subBucketIndex = (int) (value >>> bucketIndex);
+    return ((bucketIndex + 1) << subBucketHalfCountMagnitude)
+        + (subBucketIndex - subBucketHalfCount);
+  }
+
+  private long valueFromIndex(int index) {
+    int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+    int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+    if (bucketIndex < 0) {
+      subBucketIndex -= subBucketHalfCount;
+      bucketIndex = 0;
+    }
+    return ((long) subBucketIndex) << bucketIndex;
+  }
+
+  /**
+   * Encodes the non-empty buckets as space separated <code>index:count</code>
+   * pairs, which is what the summaries persist.
+   */
+  public String encode() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        if (sb.length() > 0) {
+          sb.append(' ');
+        }
+        sb.append(i).append(':').append(counts[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the non-empty buckets, the binary counterpart of
+   * {@link #encode()}: the gap from the previous bucket index and the count
+   * of each bucket, as variable-length integers.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    int buckets = 0;
+    int length = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        buckets++;
+        length = i + 1;
+      }
+    }
+    out.writeByte(significantDigits);
+    writeVarInt(out, length);
+    writeVarInt(out, buckets);
+    int previous = 0;
+    for (int i = 0; i < length; i++) {
+      if (counts[i] != 0) {
+        writeVarInt(out, i - previous);
+        writeVarInt(out, counts[i]);
+        previous = i;
+      }
+    }
+  }
+
+  static LogLinearHistogram readFrom(DataInput in) throws IOException {
+    LogLinearHistogram histogram = new LogLinearHistogram(in.readByte());
+    int[] counts = new int[readVarInt(in)];
+    int buckets = readVarInt(in);
+    int index = 0;
+    for (int i = 0; i < buckets; i++) {
+      index += readVarInt(in);
+      counts[index] = readVarInt(in);
+      histogram.totalCount += counts[index];
+    }
+    histogram.counts = counts;
+    return histogram;
+  }
+
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed histogram bucket");
+  }
+
+  public static LogLinearHistogram decode(int significantDigits, String encoded) {
+    LogLinearHistogram histogram = new LogLinearHistogram(significantDigits);
+    StringTokenizer st = new StringTokenizer(encoded, " ");
+    while (st.hasMoreTokens()) {
+      String bucket = st.nextToken();
+      int separator = bucket.indexOf(':');
+      int index = Integer.parseInt(bucket.substring(0, separator));
+      int count = Integer.parseInt(bucket.substring(separator + 1));
+      histogram.recordCount(histogram.valueFromIndex(index), count);
+    }
+    return histogram;
+  }
+}
@@ -0,0 +1,117 @@
+package hudson.plugins.performance;
+
+/**
+ * Mann-Whitney U test between two distributions of durations recorded in
+ * {@link LogLinearHistogram}s, telling whether the durations of one tend to
+ * be higher than those of the other without assuming how they are
+ * distributed.
+ *
+ * <p>
+ * The samples of a same bucket are ranked as ties, so the test takes time
+ * proportional to the number of buckets whatever the number of samples. The
+ * p-value comes from the normal approximation of U, with the correction for
+ * ties, which is accurate from a few tens of samples on each side.
+ */
+public final class MannWhitneyU {
+
+  private final long size;
+
+  private final long baselineSize;
+
+  private final double u;
+
+  private final double z;
+
+  private MannWhitneyU(long size, long baselineSize, double u, double z) {
+    this.size = size;
+    this.baselineSize = baselineSize;
+    this.u = u;
+    this.z = z;
+  }
+
+  /**
+   * Tests the durations of a build against those of a baseline.
+   */
+  public static MannWhitneyU compare(LogLinearHistogram current,
+      LogLinearHistogram baseline) {
+    int digits = Math.min(current.getSignificantDigits(),
+        baseline.getSignificantDigits());
+    current = withPrecision(current, digits);
+    baseline = withPrecision(baseline, digits);
+
+    // U counts the pairs where the current sample is the slower, ties
+    // counting for half
+    double u = 0;
+    double ties = 0;
+    long below = 0;
+    int buckets = Math.max(current.getBucketCount(), baseline.getBucketCount());
+    for (int i = 0; i < buckets; i++) {
+      long count = i < current.getBucketCount() ? current.getCountAtBucket(i) : 0;
+      long baselineCount = i < baseline.getBucketCount() ? baseline.getCountAtBucket(i) : 0;
+      u += count * (below + baselineCount / 2.0);
+      below += baselineCount;
+      double tied = count + baselineCount;
+      ties += tied * tied * tied - tied;
+    }
+
+    long n1 = current.getTotalCount();
+    long n2 = baseline.getTotalCount();
+    double n = n1 + n2;
+    double variance = n < 2 ? 0 : n1 * (double) n2 / 12
+        * ((n + 1) - ties / (n * (n - 1)));
+    double z = variance <= 0 ? 0 : (u - n1 * (double) n2 / 2) / Math.sqrt(variance);
+    return new MannWhitneyU(n1, n2, u, z);
+  }
+
+  private static LogLinearHistogram withPrecision(LogLinearHistogram histogram,
+      int digits) {
+    if (histogram.getSignificantDigits() == digits) {
+      return histogram;
+    }
+    LogLinearHistogram converted = new LogLinearHistogram(digits);
+    converted.add(histogram);
+    return converted;
+  }
+
+  public double getU() {
+    return u;
+  }
+
+  /**
+   * Number of standard deviations U is from what it would be if both
+   * distributions were the same, positive when the current durations are
+   * higher.
+   */
+  public double getZ() {
+    return z;
+  }
+
+  /**
+   * Probability of a difference at least as large if both distributions were
+   * the same, two-sided.
+   */
+  public double getPValue() {
+    return erfc(Math.abs(z) / Math.sqrt(2));
+  }
+
+  /**
+   * Probability that a current sample is slower than a baseline one, ties
+   * counting for half: 0.5 when neither tends to be slower.
+   */
+  public double getEffectSize() {
+    return size == 0 || baselineSize == 0 ? 0.5 : u / size / baselineSize;
+  }
+
+  /**
+   * Complementary error function, with a fractional error below 1.2e-7.
+   */
+  static double erfc(double x) {
+    double z = Math.abs(x);
+    double t = 1 / (1 + z / 2);
+    double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368
+        + t * (0.37409196 + t * (0.09678418 + t * (-0.18628806
+        + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+        + t * (-0.82215223 + t * 0.17087277)))))))));
+    return x >= 0 ? r : 2 - r;
+  }
+}
@@ -0,0 +1,201 @@
+package hudson.plugins.performance;
+
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses report files concurrently on a pool shared by all the builds, with
+ * one thread per available processor by default.
+ *
+ * <p>
+ * Each file is parsed on its own, with its log output kept apart and copied
+ * to the build log in the order of the files once it is done. A file that
+ * fails to parse is logged and left out of the results.
+ */
+public final class ParallelReportParser {
+
+  /**
+   * Number of files parsed at the same time.
+   */
+  public static final int THREADS = Math.max(1, Integer.getInteger(
+      ParallelReportParser.class.getName() + ".threads",
+      Runtime.getRuntime().availableProcessors()));
+
+  private static ExecutorService pool;
+
+  private static ExecutorService splitPool;
+
+  private ParallelReportParser() {
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (pool == null) {
+      pool = newPool("Performance report parser");
+    }
+    return pool;
+  }
+
+  /**
+   * Pool for the parts of a file split by its parser. It is kept apart from
+   * the pool of whole files, whose threads wait for these parts.
+   */
+  static synchronized ExecutorService getSplitPool() {
+    if (splitPool == null) {
+      splitPool = newPool("Performance report part parser");
+    }
+    return splitPool;
+  }
+
+  private static ExecutorService newPool(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + " #" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Parses the given files with a single parser.
+   */
+  public static List<PerformanceReport> parse(PerformanceReportParser parser,
+      AbstractBuild<?, ?> build, Collection<File> reports, TaskListener listener)
+      throws IOException {
+    if (reports.size() <= 1 || THREADS == 1) {
+      // not worth a hand-off to the pool
+      List<PerformanceReport> result = new ArrayList<PerformanceReport>();
+      for (File f : reports) {
+        PerformanceReport r = new ParseTask(parser, build, f).call().getReport(
+            listener.getLogger());
+        if (r != null) {
+          result.add(r);
+        }
+      }
+      return result;
+    }
+    List<Future<ParsedReport>> futures = new ArrayList<Future<ParsedReport>>();
+    for (File f : reports) {
+      futures.add(getPool().submit(new ParseTask(parser, build, f)));
+    }
+    return collect(futures, listener);
+  }
+
+  /**
+   * Parses the files of several parsers together.
+   *
+   * @return the reports in the order of the parsers and of their files
+   */
+  public static List<PerformanceReport> parse(AbstractBuild<?, ?> build,
+      Map<PerformanceReportParser, List<File>> reports, TaskListener listener)
+      throws IOException {
+    List<Future<ParsedReport>> futures = new ArrayList<Future<ParsedReport>>();
+    for (Map.Entry<PerformanceReportParser, List<File>> entry : reports.entrySet()) {
+      for (File f : entry.getValue()) {
+        futures.add(getPool().submit(new ParseTask(entry.getKey(), build, f)));
+      }
+    }
+    return collect(futures, listener);
+  }
+
+  private static List<PerformanceReport> collect(
+      List<Future<ParsedReport>> futures, TaskListener listener)
+      throws IOException {
+    List<PerformanceReport> result = new ArrayList<PerformanceReport>();
+    PrintStream logger = listener.getLogger();
+    try {
+      for (Future<ParsedReport> future : futures) {
+        PerformanceReport r;
+        try {
+          r = future.get().getReport(logger);
+        } catch (ExecutionException e) {
+          // ParseTask catches everything, this is only an Error
+          logger.println("Performance: Failed to parse a report: " + e.getCause());
+          continue;
+        }
+        if (r != null) {
+          result.add(r);
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Future<ParsedReport> future : futures) {
+        future.cancel(true);
+      }
+      throw new InterruptedIOException("Interrupted while parsing the reports");
+    }
+    return result;
+  }
+
+  /**
+   * Outcome of parsing one file: a report, or none, and the log output.
+   */
+  private static final class ParsedReport {
+    private final PerformanceReport report;
+
+    private final ByteArrayOutputStream log;
+
+    ParsedReport(PerformanceReport report, ByteArrayOutputStream log) {
+      this.report = report;
+      this.log = log;
+    }
+
+    PerformanceReport getReport(PrintStream logger) throws IOException {
+      log.writeTo(logger);
+      logger.flush();
+      return report;
+    }
+  }
+
+  private static final class ParseTask implements Callable<ParsedReport> {
+    private final PerformanceReportParser parser;
+
+    private final AbstractBuild<?, ?> build;
+
+    private final File report;
+
+    ParseTask(PerformanceReportParser parser, AbstractBuild<?, ?> build,
+        File report) {
+      this.parser = parser;
+      this.build = build;
+      this.report = report;
+    }
+
+    public ParsedReport call() {
+      ByteArrayOutputStream log = new ByteArrayOutputStream();
+      TaskListener listener = new StreamTaskListener(log);
+      PerformanceReport r = null;
+      try {
+        r = parser.parse(build, report, listener);
+        r.setParser(parser);
+      } catch (PerformanceReportParser.ParseException e) {
+        // already logged by the parser
+      } catch (IOException e) {
+        listener.getLogger().println("Performance: Failed to parse " + report
+            + ": " + e.getMessage());
+      } catch (RuntimeException e) {
+        e.printStackTrace(listener.error("Performance: Failed to parse " + report));
+      }
+      listener.getLogger().flush();
+      return new ParsedReport(r, log);
+    }
+  }
+}
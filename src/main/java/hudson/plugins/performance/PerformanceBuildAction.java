@@ -21,17 +21,27 @@ public class PerformanceBuildAction implements Action, StaplerProxy {
    */
   private final List<PerformanceReportParser> parsers;
 
-  private transient final PrintStream hudsonConsoleWriter;
+  /**
+   * Percentiles, in percent, kept in the summaries of this build.
+   * For compatibility reasons, this can be null.
+   */
+  private final double[] percentiles;
 
-  private transient WeakReference<PerformanceReportMap> performanceReportMap;
+  private transient final PrintStream hudsonConsoleWriter;
 
   private static final Logger logger = Logger.getLogger(PerformanceBuildAction.class.getName());
 
   public PerformanceBuildAction(AbstractBuild<?, ?> pBuild, PrintStream logger,
       List<PerformanceReportParser> parsers) {
+    this(pBuild, logger, parsers, null);
+  }
+
+  public PerformanceBuildAction(AbstractBuild<?, ?> pBuild, PrintStream logger,
+      List<PerformanceReportParser> parsers, double[] percentiles) {
     build = pBuild;
     hudsonConsoleWriter = logger;
     this.parsers = parsers;
+    this.percentiles = percentiles;
   }
 
   public PerformanceReportParser getParserById(String id) {
@@ -42,6 +52,10 @@ public class PerformanceBuildAction implements Action, StaplerProxy {
     return null;
   }
 
+  public double[] getPercentiles() {
+    return percentiles == null ? new double[0] : percentiles;
+  }
+
   public String getDisplayName() {
     return Messages.BuildAction_DisplayName();
   }
@@ -66,13 +80,14 @@ public class PerformanceBuildAction implements Action, StaplerProxy {
     return hudsonConsoleWriter;
   }
 
+  /**
+   * Returns the reports of this build, kept in the {@link ReportMapCache}
+   * once loaded.
+   */
   public synchronized PerformanceReportMap getPerformanceReportMap() {
-    PerformanceReportMap reportMap = null;
-    WeakReference<PerformanceReportMap> wr = this.performanceReportMap;
-    if (wr != null) {
-      reportMap = wr.get();
-      if (reportMap != null)
-        return reportMap;
+    PerformanceReportMap reportMap = ReportMapCache.getInstance().get(this);
+    if (reportMap != null) {
+      return reportMap;
     }
 
     try {
@@ -83,13 +98,20 @@ public class PerformanceBuildAction implements Action, StaplerProxy {
     } catch (InterruptedException e) {
       logger.log(Level.SEVERE, "Error creating new PerformanceReportMap()", e);
     }
-    this.performanceReportMap = new WeakReference<PerformanceReportMap>(
-        reportMap);
+    if (reportMap != null) {
+      ReportMapCache.getInstance().put(this, reportMap);
+    }
     return reportMap;
   }
 
   public void setPerformanceReportMap(
       WeakReference<PerformanceReportMap> performanceReportMap) {
-    this.performanceReportMap = performanceReportMap;
+    PerformanceReportMap reportMap = performanceReportMap == null ? null
+        : performanceReportMap.get();
+    if (reportMap == null) {
+      ReportMapCache.getInstance().remove(this);
+    } else {
+      ReportMapCache.getInstance().put(this, reportMap);
+    }
   }
 }
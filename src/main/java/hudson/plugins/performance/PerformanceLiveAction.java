@@ -0,0 +1,209 @@
+package hudson.plugins.performance;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of the JMeter CSV results of a running build, updated from the
+ * rows appended since the previous update, see
+ * {@link PerformanceLiveWrapper}. Once the build ends,
+ * {@link PerformancePublisher} only reads the rows after the last checkpoint
+ * and removes this action.
+ *
+ * <p>
+ * Nothing of it is persisted: after a restart the page is empty.
+ */
+public class PerformanceLiveAction implements Action {
+
+  private final transient AbstractBuild<?, ?> build;
+
+  private final String glob;
+
+  /**
+   * Checkpoints of the files read so far, by path on the node.
+   */
+  private transient Map<String, ReportTail.Checkpoint> checkpoints = new LinkedHashMap<String, ReportTail.Checkpoint>();
+
+  /**
+   * Statistics of the files read so far, by path on the node, into which
+   * each update merges the rows it read.
+   */
+  private transient Map<String, PerformanceReport> merged = new LinkedHashMap<String, PerformanceReport>();
+
+  /**
+   * Frozen copies of the merged statistics as of the last update, which
+   * pages show while the next update runs. The map and its reports are
+   * replaced, never modified.
+   */
+  private transient volatile Map<String, PerformanceReport> reports = Collections.emptyMap();
+
+  private transient volatile long updated = 0;
+
+  private transient boolean failed = false;
+
+  public PerformanceLiveAction(AbstractBuild<?, ?> build, String glob) {
+    this.build = build;
+    this.glob = glob;
+  }
+
+  public String getDisplayName() {
+    return Messages.LiveAction_DisplayName();
+  }
+
+  public String getIconFileName() {
+    return build != null && build.isBuilding() ? "graph.gif" : null;
+  }
+
+  public String getUrlName() {
+    return "performance-live";
+  }
+
+  public AbstractBuild<?, ?> getBuild() {
+    return build;
+  }
+
+  /**
+   * Statistics of each file read so far, ordered by name.
+   */
+  public List<PerformanceReport> getReports() {
+    Map<String, PerformanceReport> current = reports;
+    if (current == null) {
+      return Collections.emptyList();
+    }
+    List<PerformanceReport> list = new ArrayList<PerformanceReport>(current.values());
+    Collections.sort(list);
+    return list;
+  }
+
+  /**
+   * Time of the last update, or null before the first one.
+   */
+  public Date getUpdated() {
+    return updated == 0 ? null : new Date(updated);
+  }
+
+  /**
+   * Reads the rows appended to the results since the previous update. A
+   * failure is only logged the first time.
+   */
+  synchronized void update(TaskListener listener) {
+    try {
+      FilePath workspace = build.getWorkspace();
+      if (workspace == null) {
+        return;
+      }
+      List<ReportTail.Checkpoint> tail = new ArrayList<ReportTail.Checkpoint>();
+      for (FilePath file : PerformancePublisher.locatePerformanceReports(workspace, glob)) {
+        if (file.getName().endsWith(PerformanceReportParser.COMPRESSED_SUFFIX)) {
+          continue;
+        }
+        ReportTail.Checkpoint checkpoint = checkpoints.get(file.getRemote());
+        tail.add(checkpoint == null ? new ReportTail.Checkpoint(file.getRemote())
+            : checkpoint);
+      }
+      if (!tail.isEmpty()) {
+        merge(workspace.act(new ReportTail(tail, false)));
+      }
+      updated = System.currentTimeMillis();
+    } catch (IOException e) {
+      logFailure(listener, e);
+    } catch (InterruptedException e) {
+      logFailure(listener, e);
+    }
+  }
+
+  private void logFailure(TaskListener listener, Exception e) {
+    if (!failed) {
+      failed = true;
+      listener.getLogger().println("Performance: Failed to read the results while the build runs: "
+          + e.getMessage());
+    }
+  }
+
+  /**
+   * Whether a file was read while the build ran.
+   */
+  synchronized boolean isTailed(FilePath file) {
+    return checkpoints.containsKey(file.getRemote());
+  }
+
+  /**
+   * Reads the rows after the last checkpoint of files that were read while
+   * the build ran, and returns their whole statistics.
+   */
+  synchronized List<PerformanceReport> finish(PerformanceReportParser parser,
+      List<FilePath> files, TaskListener listener) throws IOException,
+      InterruptedException {
+    List<ReportTail.Checkpoint> tail = new ArrayList<ReportTail.Checkpoint>();
+    for (FilePath file : files) {
+      tail.add(checkpoints.get(file.getRemote()));
+    }
+    merge(build.getWorkspace().act(new ReportTail(tail, true)));
+    List<PerformanceReport> finished = new ArrayList<PerformanceReport>();
+    for (ReportTail.Checkpoint checkpoint : tail) {
+      PerformanceReport report = merged.get(checkpoint.getPath());
+      report.setParser(parser);
+      report.setErrorStream(listener.getLogger());
+      finished.add(report);
+    }
+    return finished;
+  }
+
+  /**
+   * Merges the rows read into the statistics of their files, so that each
+   * update costs the rows it read, not all the rows read so far.
+   */
+  private void merge(List<ReportTail.Delta> deltas) {
+    Map<String, PerformanceReport> shown = new LinkedHashMap<String, PerformanceReport>(reports);
+    for (ReportTail.Delta delta : deltas) {
+      if (delta.getReport() == null) {
+        continue;
+      }
+      String path = delta.getCheckpoint().getPath();
+      checkpoints.put(path, delta.getCheckpoint());
+      PerformanceReport report = merged.get(path);
+      if (report == null) {
+        report = new PerformanceReport();
+        report.setReportFileName(delta.getReport().getReportFileName());
+        report.setBuild(build);
+        merged.put(path, report);
+      }
+      report.merge(delta.getReport());
+      shown.put(path, snapshot(report));
+    }
+    reports = Collections.unmodifiableMap(shown);
+  }
+
+  /**
+   * Copies the statistics of a report as they are now, frozen.
+   */
+  private static PerformanceReport snapshot(PerformanceReport report) {
+    PerformanceReport copy = new PerformanceReport();
+    copy.setReportFileName(report.getReportFileName());
+    copy.setBuild(report.getBuild());
+    for (UriReport uriReport : report.getUriReportMap().values()) {
+      UriReport uriCopy = new UriReport(copy, uriReport.getStaplerUri(),
+          uriReport.getUri());
+      uriCopy.setStats(uriReport.getStats().asFrozen());
+      Timeline timeline = new Timeline();
+      timeline.merge(uriReport.getTimeline());
+      uriCopy.setTimeline(timeline);
+      AttributeStatistics attributes = new AttributeStatistics();
+      attributes.merge(uriReport.getAttributes());
+      uriCopy.setAttributes(attributes);
+      copy.addUriReport(uriCopy);
+    }
+    copy.setStatistics(report.getStatistics().asFrozen());
+    return copy;
+  }
+}
@@ -0,0 +1,104 @@
+package hudson.plugins.performance;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildWrapper;
+import hudson.tasks.BuildWrapperDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads JMeter CSV results while the build writes them, every few seconds
+ * from where the previous read stopped, and shows their statistics on the
+ * page of the running build, see {@link PerformanceLiveAction}.
+ */
+public class PerformanceLiveWrapper extends BuildWrapper {
+
+  @Extension
+  public static class DescriptorImpl extends BuildWrapperDescriptor {
+    @Override
+    public String getDisplayName() {
+      return Messages.LiveWrapper_DisplayName();
+    }
+
+    @Override
+    public boolean isApplicable(AbstractProject<?, ?> item) {
+      return true;
+    }
+  }
+
+  public static final int DEFAULT_INTERVAL = 30;
+
+  private static ScheduledExecutorService timer;
+
+  /**
+   * GLOB patterns of the JMeter CSV results.
+   */
+  private final String glob;
+
+  /**
+   * Seconds between two reads.
+   */
+  private final int interval;
+
+  @DataBoundConstructor
+  public PerformanceLiveWrapper(String glob, int interval) {
+    this.glob = glob == null || glob.trim().length() == 0 ? "**/*.csv"
+        : glob.trim();
+    this.interval = interval > 0 ? interval : DEFAULT_INTERVAL;
+  }
+
+  public String getGlob() {
+    return glob;
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  private static synchronized ScheduledExecutorService getTimer() {
+    if (timer == null) {
+      timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "Performance live reader");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return timer;
+  }
+
+  @Override
+  public Environment setUp(AbstractBuild build, Launcher launcher,
+      final BuildListener listener) throws IOException, InterruptedException {
+    final PerformanceLiveAction action = new PerformanceLiveAction(build, glob);
+    build.addAction(action);
+    listener.getLogger().println("Performance: Reading the results '" + glob
+        + "' every " + interval + " seconds while the build runs");
+    final ScheduledFuture<?> future = getTimer().scheduleWithFixedDelay(
+        new Runnable() {
+          public void run() {
+            action.update(listener);
+          }
+        }, interval, interval, TimeUnit.SECONDS);
+    return new Environment() {
+      @Override
+      public boolean tearDown(AbstractBuild build, BuildListener listener)
+          throws IOException, InterruptedException {
+        // the publisher reads the rows left
+        future.cancel(false);
+        return true;
+      }
+    };
+  }
+}
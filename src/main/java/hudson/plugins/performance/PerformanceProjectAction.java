@@ -11,11 +11,9 @@ import hudson.util.ChartUtil.NumberOnlyBuildLabel;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
-import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.List;
@@ -120,11 +118,20 @@ public final class PerformanceProjectAction implements Action {
   }
 
   private JFreeChart createRespondingTimeChart(CategoryDataset dataset) {
+    return createTrendChart(Messages.ProjectAction_RespondingTime(), "ms", dataset);
+  }
+
+  private JFreeChart createThroughputChart(CategoryDataset dataset) {
+    return createTrendChart(Messages.ProjectAction_Throughput(), "/s", dataset);
+  }
+
+  private JFreeChart createTrendChart(String title, String rangeAxisLabel,
+      CategoryDataset dataset) {
 
     final JFreeChart chart = ChartFactory.createLineChart(
-        Messages.ProjectAction_RespondingTime(), // charttitle
+        title, // charttitle
         null, // unused
-        "ms", // range axis label
+        rangeAxisLabel, // range axis label
         dataset, // data
         PlotOrientation.VERTICAL, // orientation
         true, // include legend
@@ -167,8 +174,8 @@ public final class PerformanceProjectAction implements Action {
     return chart;
   }
 
-  public void doErrorsGraph(StaplerRequest request, StaplerResponse response)
-      throws IOException {
+  public void doErrorsGraph(final StaplerRequest request,
+      StaplerResponse response) throws IOException {
     PerformanceReportPosition performanceReportPosition = new PerformanceReportPosition();
     request.bindParameters(performanceReportPosition);
     String performanceReportNameFile = performanceReportPosition.getPerformanceReportPosition();
@@ -184,9 +191,21 @@ public final class PerformanceProjectAction implements Action {
       response.sendRedirect2(request.getContextPath() + "/images/headless.png");
       return;
     }
+    final String reportName = performanceReportNameFile;
+    ChartCache.getInstance().generateGraph(request, response,
+        getChartKey("errors", request, reportName), new ChartCache.Source() {
+          public JFreeChart createChart() {
+            return createErrorsChart(getErrorsData(request, reportName).build());
+          }
+        }, 400, 200);
+  }
+
+  private DataSetBuilder<String, NumberOnlyBuildLabel> getErrorsData(
+      StaplerRequest request, String performanceReportNameFile) {
     DataSetBuilder<String, NumberOnlyBuildLabel> dataSetBuilderErrors = new DataSetBuilder<String, NumberOnlyBuildLabel>();
     List<?> builds = getProject().getBuilds();
     List<Integer> buildsLimits = getFirstAndLastBuild(request, builds);
+    TrendIndex trendIndex = TrendIndex.get(getProject());
 
     int nbBuildsToAnalyze = builds.size();
     for (Iterator<?> iterator = builds.iterator(); iterator.hasNext();) {
@@ -198,8 +217,8 @@ public final class PerformanceProjectAction implements Action {
         if (performanceBuildAction == null) {
           continue;
         }
-        PerformanceReport performanceReport = performanceBuildAction.getPerformanceReportMap().getPerformanceReport(
-            performanceReportNameFile);
+        TrendIndex.Entry performanceReport = trendIndex.getEntry(
+            currentBuild.getNumber(), performanceReportNameFile);
         if (performanceReport == null) {
           nbBuildsToAnalyze--;
           continue;
@@ -209,11 +228,10 @@ public final class PerformanceProjectAction implements Action {
       }
       nbBuildsToAnalyze--;
     }
-    ChartUtil.generateGraph(request, response,
-        createErrorsChart(dataSetBuilderErrors.build()), 400, 200);
+    return dataSetBuilderErrors;
   }
 
-  public void doRespondingTimeGraph(StaplerRequest request,
+  public void doRespondingTimeGraph(final StaplerRequest request,
       StaplerResponse response) throws IOException {
     PerformanceReportPosition performanceReportPosition = new PerformanceReportPosition();
     request.bindParameters(performanceReportPosition);
@@ -230,9 +248,22 @@ public final class PerformanceProjectAction implements Action {
       response.sendRedirect2(request.getContextPath() + "/images/headless.png");
       return;
     }
+    final String reportName = performanceReportNameFile;
+    ChartCache.getInstance().generateGraph(request, response,
+        getChartKey("respondingTime", request, reportName), new ChartCache.Source() {
+          public JFreeChart createChart() {
+            return createRespondingTimeChart(getRespondingTimeData(request,
+                reportName).build());
+          }
+        }, 400, 200);
+  }
+
+  private DataSetBuilder<String, NumberOnlyBuildLabel> getRespondingTimeData(
+      StaplerRequest request, String performanceReportNameFile) {
     DataSetBuilder<String, NumberOnlyBuildLabel> dataSetBuilderAverage = new DataSetBuilder<String, NumberOnlyBuildLabel>();
     List<?> builds = getProject().getBuilds();
     List<Integer> buildsLimits = getFirstAndLastBuild(request, builds);
+    TrendIndex trendIndex = TrendIndex.get(getProject());
 
     int nbBuildsToAnalyze = builds.size();
     for (Iterator<?> iterator = builds.iterator(); iterator.hasNext();) {
@@ -244,8 +275,8 @@ public final class PerformanceProjectAction implements Action {
         if (performanceBuildAction == null) {
           continue;
         }
-        PerformanceReport performanceReport = performanceBuildAction.getPerformanceReportMap().getPerformanceReport(
-            performanceReportNameFile);
+        TrendIndex.Entry performanceReport = trendIndex.getEntry(
+            currentBuild.getNumber(), performanceReportNameFile);
         if (performanceReport == null) {
           nbBuildsToAnalyze--;
           continue;
@@ -256,11 +287,88 @@ public final class PerformanceProjectAction implements Action {
             Messages.ProjectAction_Average(), label);
         dataSetBuilderAverage.add(performanceReport.get90Line(),
             Messages.ProjectAction_Line90(), label);
+        for (double percentile : performanceReport.getPercentiles()) {
+          dataSetBuilderAverage.add(performanceReport.getPercentile(percentile),
+              Messages.ProjectAction_Percentile(AbstractReport.formatPercentile(percentile)),
+              label);
+        }
       }
       nbBuildsToAnalyze--;
     }
-    ChartUtil.generateGraph(request, response,
-        createRespondingTimeChart(dataSetBuilderAverage.build()), 400, 200);
+    return dataSetBuilderAverage;
+  }
+
+  public void doThroughputGraph(final StaplerRequest request,
+      StaplerResponse response) throws IOException {
+    PerformanceReportPosition performanceReportPosition = new PerformanceReportPosition();
+    request.bindParameters(performanceReportPosition);
+    String performanceReportNameFile = performanceReportPosition.getPerformanceReportPosition();
+    if (performanceReportNameFile == null) {
+      if (getPerformanceReportList().size() == 1) {
+        performanceReportNameFile = getPerformanceReportList().get(0);
+      } else {
+        return;
+      }
+    }
+    if (ChartUtil.awtProblemCause != null) {
+      // not available. send out error message
+      response.sendRedirect2(request.getContextPath() + "/images/headless.png");
+      return;
+    }
+    final String reportName = performanceReportNameFile;
+    ChartCache.getInstance().generateGraph(request, response,
+        getChartKey("throughput", request, reportName), new ChartCache.Source() {
+          public JFreeChart createChart() {
+            return createThroughputChart(getThroughputData(request,
+                reportName).build());
+          }
+        }, 400, 200);
+  }
+
+  private DataSetBuilder<String, NumberOnlyBuildLabel> getThroughputData(
+      StaplerRequest request, String performanceReportNameFile) {
+    DataSetBuilder<String, NumberOnlyBuildLabel> dataSetBuilderThroughput = new DataSetBuilder<String, NumberOnlyBuildLabel>();
+    List<?> builds = getProject().getBuilds();
+    List<Integer> buildsLimits = getFirstAndLastBuild(request, builds);
+    TrendIndex trendIndex = TrendIndex.get(getProject());
+
+    int nbBuildsToAnalyze = builds.size();
+    for (Iterator<?> iterator = builds.iterator(); iterator.hasNext();) {
+      AbstractBuild<?, ?> currentBuild = (AbstractBuild<?, ?>) iterator.next();
+      if (nbBuildsToAnalyze <= buildsLimits.get(1)
+          && buildsLimits.get(0) <= nbBuildsToAnalyze) {
+        NumberOnlyBuildLabel label = new NumberOnlyBuildLabel(currentBuild);
+        PerformanceBuildAction performanceBuildAction = currentBuild.getAction(PerformanceBuildAction.class);
+        if (performanceBuildAction == null) {
+          continue;
+        }
+        TrendIndex.Entry performanceReport = trendIndex.getEntry(
+            currentBuild.getNumber(), performanceReportNameFile);
+        if (performanceReport == null) {
+          nbBuildsToAnalyze--;
+          continue;
+        }
+        dataSetBuilderThroughput.add(performanceReport.getThroughput(),
+            Messages.ProjectAction_RequestsPerSecond(), label);
+      }
+      nbBuildsToAnalyze--;
+    }
+    return dataSetBuilderThroughput;
+  }
+
+  /**
+   * Describes what a trend graph is drawn from: the report, the range of
+   * builds configured by the user, the builds of the project and the latest
+   * one that recorded results.
+   */
+  private String getChartKey(String graph, StaplerRequest request,
+      String performanceReportNameFile) {
+    GraphConfigurationDetail graphConf = (GraphConfigurationDetail) createUserConfiguration(request);
+    return getProject().getFullName() + '|' + graph + '|'
+        + performanceReportNameFile + '|' + graphConf.getConfigType() + '|'
+        + graphConf.getBuildCount() + '|' + graphConf.getFirstDayCount() + '|'
+        + graphConf.getLastDayCount() + '|' + getProject().getBuilds().size()
+        + '|' + TrendIndex.get(getProject()).getLastBuildNumber();
   }
 
   /**
@@ -338,17 +446,8 @@ public final class PerformanceProjectAction implements Action {
     this.performanceReportList = new ArrayList<String>(0);
     if (this.project != null
         && this.project.getSomeBuildWithWorkspace() != null) {
-      File file = new File(
-          this.project.getSomeBuildWithWorkspace().getRootDir(),
-          PerformanceReportMap.getPerformanceReportDirRelativePath());
-      if (file.exists()) {
-        for (File performanceReportFile : file.listFiles()) {
-          this.performanceReportList.add(performanceReportFile.getName());
-        }
-      }
-    }
-    if (this.performanceReportList != null) {
-      Collections.sort(performanceReportList);
+      this.performanceReportList = PerformanceReportMap.getPerformanceReportNames(
+          this.project.getSomeBuildWithWorkspace());
     }
     return this.performanceReportList;
   }
@@ -428,6 +527,7 @@ public final class PerformanceProjectAction implements Action {
     DataSetBuilder<String, NumberOnlyBuildLabel> dataSet = new DataSetBuilder<String, NumberOnlyBuildLabel>();
     List<?> builds = getProject().getBuilds();
     List<Integer> buildsLimits = getFirstAndLastBuild(request, builds);
+    TrendIndex trendIndex = TrendIndex.get(getProject());
 
     int nbBuildsToAnalyze = builds.size();
     for (Iterator<?> iterator = builds.iterator(); iterator.hasNext();) {
@@ -439,8 +539,7 @@ public final class PerformanceProjectAction implements Action {
         if (performanceBuildAction == null) {
           continue;
         }
-        PerformanceReport report = null;
-        report = performanceBuildAction.getPerformanceReportMap().getPerformanceReport(
+        TrendIndex.Entry report = trendIndex.getEntry(currentBuild.getNumber(),
             performanceReportNameFile);
         if (report == null) {
           nbBuildsToAnalyze--;
@@ -452,6 +551,11 @@ public final class PerformanceProjectAction implements Action {
             Messages.ProjectAction_Median(), label);
         dataSet.add(Math.round(report.get90Line()),
             Messages.ProjectAction_Line90(), label);
+        for (double percentile : report.getPercentiles()) {
+          dataSet.add(Math.round(report.getPercentile(percentile)),
+              Messages.ProjectAction_Percentile(AbstractReport.formatPercentile(percentile)),
+              label);
+        }
         dataSet.add(Math.round(report.getMin()),
             Messages.ProjectAction_Minimum(), label);
         dataSet.add(Math.round(report.getMax()),
@@ -460,6 +564,8 @@ public final class PerformanceProjectAction implements Action {
             Messages.ProjectAction_PercentageOfErrors(), label);
         dataSet.add(Math.round(report.countErrors()),
             Messages.ProjectAction_Errors(), label);
+        dataSet.add(Math.round(report.getThroughput() * 10) / 10.0,
+            Messages.ProjectAction_RequestsPerSecond(), label);
       }
       nbBuildsToAnalyze--;
     }
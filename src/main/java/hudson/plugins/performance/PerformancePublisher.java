@@ -7,6 +7,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.BuildListener;
+import hudson.model.Descriptor;
 import hudson.model.Result;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
@@ -15,17 +16,23 @@ import hudson.tasks.Recorder;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 public class PerformancePublisher extends Recorder {
+  static final String DEFAULT_REGRESSION_METRIC = "p90";
+
   @Extension
   public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
     @Override
@@ -42,6 +49,10 @@ public class PerformancePublisher extends Recorder {
       return PerformanceReportParserDescriptor.all();
     }
 
+    public List<Descriptor<SlaRule>> getSlaRuleDescriptors() {
+      return SlaRule.all();
+    }
+
     @Override
     public boolean isApplicable(Class<? extends AbstractProject> jobType) {
       return true;
@@ -52,6 +63,60 @@ public class PerformancePublisher extends Recorder {
 
   private int errorUnstableThreshold = 0;
 
+  /**
+   * Percentiles, in percent, to compute besides the median and the 90% line,
+   * separated by commas or spaces.
+   */
+  private String percentiles = "";
+
+  /**
+   * Whether the reports are parsed on the node that holds the workspace,
+   * which then only sends their statistics to the master.
+   */
+  private boolean parseOnSlave = false;
+
+  /**
+   * Whether only the summaries of the reports are kept with the build,
+   * without a copy of the report files.
+   */
+  private boolean discardReportFiles = false;
+
+  /**
+   * Whether the copies of the report files are compressed with gzip.
+   */
+  private boolean compressReportFiles = false;
+
+  /**
+   * Metric compared with the baseline build, see {@link ReportMetric#parse}.
+   */
+  private String regressionMetric = DEFAULT_REGRESSION_METRIC;
+
+  /**
+   * Increase of the metric over the baseline, in percent, that sets the build
+   * as unstable, or 0 not to compare.
+   */
+  private int regressionUnstableThreshold = 0;
+
+  private int regressionFailedThreshold = 0;
+
+  /**
+   * Number of the build compared with, or 0 for the previous successful
+   * build.
+   */
+  private int baselineBuild = 0;
+
+  /**
+   * p-value below which a URI slower than in the baseline sets the build as
+   * unstable, see {@link SignificanceCheck}, or 0 not to test.
+   */
+  private double significanceLevel = 0;
+
+  /**
+   * Increase of the median, in percent, below which a significant slowdown is
+   * ignored.
+   */
+  private int significanceMinEffect = 0;
+
   /**
    * @deprecated as of 1.3. for compatibility
    */
@@ -62,15 +127,47 @@ public class PerformancePublisher extends Recorder {
    */
   private List<PerformanceReportParser> parsers;
 
-  @DataBoundConstructor
+  /**
+   * Limits on the metrics of the URIs matching patterns.
+   */
+  private List<SlaRule> slaRules;
+
   public PerformancePublisher(int errorFailedThreshold,
       int errorUnstableThreshold,
       List<? extends PerformanceReportParser> parsers) {
+    this(errorFailedThreshold, errorUnstableThreshold, null, false, false,
+        false, DEFAULT_REGRESSION_METRIC, 0, 0, 0, 0, 0, parsers, null);
+  }
+
+  @DataBoundConstructor
+  public PerformancePublisher(int errorFailedThreshold,
+      int errorUnstableThreshold, String percentiles, boolean parseOnSlave,
+      boolean discardReportFiles, boolean compressReportFiles,
+      String regressionMetric, int regressionUnstableThreshold,
+      int regressionFailedThreshold, int baselineBuild,
+      double significanceLevel, int significanceMinEffect,
+      List<? extends PerformanceReportParser> parsers,
+      List<? extends SlaRule> slaRules) {
     this.errorFailedThreshold = errorFailedThreshold;
     this.errorUnstableThreshold = errorUnstableThreshold;
+    this.percentiles = percentiles == null ? "" : percentiles.trim();
+    this.parseOnSlave = parseOnSlave;
+    this.discardReportFiles = discardReportFiles;
+    this.compressReportFiles = compressReportFiles;
+    this.regressionMetric = regressionMetric == null
+        || regressionMetric.trim().length() == 0 ? DEFAULT_REGRESSION_METRIC
+        : regressionMetric.trim();
+    this.regressionUnstableThreshold = Math.max(0, regressionUnstableThreshold);
+    this.regressionFailedThreshold = Math.max(0, regressionFailedThreshold);
+    this.baselineBuild = Math.max(0, baselineBuild);
+    this.significanceLevel = Math.max(0, Math.min(significanceLevel, 1));
+    this.significanceMinEffect = Math.max(0, significanceMinEffect);
     if (parsers == null)
       parsers = Collections.emptyList();
     this.parsers = new ArrayList<PerformanceReportParser>(parsers);
+    if (slaRules == null)
+      slaRules = Collections.emptyList();
+    this.slaRules = new ArrayList<SlaRule>(slaRules);
   }
 
   public static File getPerformanceReport(AbstractBuild<?, ?> build,
@@ -80,6 +177,18 @@ public class PerformancePublisher extends Recorder {
         PerformanceReportMap.getPerformanceReportFileRelativePath(getPerformanceReportBuildFileName(performanceReportName)));
   }
 
+  /**
+   * Returns where a report parsed by the given parser is copied, in a
+   * directory named after the parser.
+   */
+  public static File getPerformanceReport(AbstractBuild<?, ?> build,
+      PerformanceReportParser parser, String performanceReportName) {
+    return new File(
+        build.getRootDir(),
+        PerformanceReportMap.getPerformanceReportFileRelativePath(parser.getDescriptor().getId()
+            + "/" + getPerformanceReportBuildFileName(performanceReportName)));
+  }
+
   @Override
   public Action getProjectAction(AbstractProject<?, ?> project) {
     return new PerformanceProjectAction(project);
@@ -93,6 +202,10 @@ public class PerformancePublisher extends Recorder {
     return parsers;
   }
 
+  public List<SlaRule> getSlaRules() {
+    return slaRules;
+  }
+
   /**
    * <p>
    * Delete the date suffix appended to the Performance result files by the
@@ -115,6 +228,37 @@ public class PerformancePublisher extends Recorder {
     return result;
   }
 
+  /**
+   * Parses a list of percentiles such as <code>95, 99, 99.9</code>, skipping
+   * values that are not strictly between 0 and 100.
+   */
+  public static double[] parsePercentiles(String percentiles, PrintStream logger) {
+    List<Double> values = new ArrayList<Double>();
+    if (percentiles != null) {
+      for (String token : percentiles.trim().split("[\\s,;]+")) {
+        if (token.length() == 0) {
+          continue;
+        }
+        try {
+          double value = Double.parseDouble(token);
+          if (value > 0 && value < 100) {
+            values.add(value);
+            continue;
+          }
+        } catch (NumberFormatException e) {
+        }
+        if (logger != null) {
+          logger.println("Performance: Ignoring invalid percentile '" + token + "'");
+        }
+      }
+    }
+    double[] result = new double[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+
   /**
    * look for performance reports based in the configured parameter includes.
    * 'includes' is - an Ant-style pattern - a list of files and folders
@@ -170,11 +314,35 @@ public class PerformancePublisher extends Recorder {
           + Result.FAILURE.toString().toLowerCase());
     }
 
+    double[] percentileValues = parsePercentiles(percentiles, logger);
+    RegressionCheck regressionCheck = createRegressionCheck(logger);
+    SignificanceCheck significanceCheck = null;
+    if (significanceLevel > 0) {
+      logger.println("Performance: URIs slower than in the baseline with a p-value below "
+          + significanceLevel + " and a median at least " + significanceMinEffect
+          + "% higher set the build as " + Result.UNSTABLE.toString().toLowerCase());
+      significanceCheck = new SignificanceCheck(significanceLevel,
+          significanceMinEffect);
+    }
+    AbstractBuild<?, ?> baseline = regressionCheck == null
+        && significanceCheck == null ? null : getBaselineBuild(build, logger);
+    SlaRuleMatcher slaRuleMatcher = null;
+    if (!slaRules.isEmpty()) {
+      slaRuleMatcher = new SlaRuleMatcher(slaRules, logger);
+      logger.println("Performance: Checking " + slaRuleMatcher.size()
+          + " response time rules");
+    }
+
     // add the report to the build object.
     PerformanceBuildAction a = new PerformanceBuildAction(build, logger,
-        parsers);
+        parsers, percentileValues);
     build.addAction(a);
 
+    // locate the reports of all the parsers first, so that they are parsed together
+    Map<PerformanceReportParser, List<File>> localReports = new LinkedHashMap<PerformanceReportParser, List<File>>();
+    Map<PerformanceReportParser, List<FilePath>> slaveReports = new LinkedHashMap<PerformanceReportParser, List<FilePath>>();
+    List<PerformanceReport> liveReports = new ArrayList<PerformanceReport>();
+    PerformanceLiveAction live = build.getAction(PerformanceLiveAction.class);
     for (PerformanceReportParser parser : parsers) {
       String glob = parser.glob;
       logger.println("Performance: Recording " + parser.getReportName()
@@ -185,53 +353,236 @@ public class PerformancePublisher extends Recorder {
 
       if (files.isEmpty()) {
         if (build.getResult().isWorseThan(Result.UNSTABLE)) {
-          return true;
+          break;
         }
         build.setResult(Result.FAILURE);
         logger.println("Performance: no " + parser.getReportName()
             + " files matching '" + glob
             + "' have been found. Has the report generated?. Setting Build to "
             + build.getResult());
-        return true;
+        break;
       }
 
-      List<File> localReports = copyReportsToMaster(build, logger, files);
-      Collection<PerformanceReport> parsedReports = parser.parse(build,
-          localReports, listener);
-
-      // mark the build as unstable or failure depending on the outcome.
-      for (PerformanceReport r : parsedReports) {
-        r.setBuild(build);
-        r.setErrorStream(logger);
-        double errorPercent = r.errorPercent();
-        if (errorFailedThreshold > 0 && errorPercent >= errorFailedThreshold) {
-          build.setResult(Result.FAILURE);
-        } else if (errorUnstableThreshold > 0
-            && errorPercent >= errorUnstableThreshold) {
-          build.setResult(Result.UNSTABLE);
+      if (live != null && parser instanceof JMeterCsvParser) {
+        // the reports read while the build ran are only read from their
+        // last checkpoint
+        List<FilePath> tailed = new ArrayList<FilePath>();
+        List<FilePath> others = new ArrayList<FilePath>();
+        for (FilePath file : files) {
+          (live.isTailed(file) ? tailed : others).add(file);
+        }
+        if (!tailed.isEmpty()) {
+          logger.println("Performance: Reading the end of " + tailed.size()
+              + " " + parser.getReportName() + " reports read while the build ran");
+          liveReports.addAll(live.finish(parser, tailed, listener));
+          if (!discardReportFiles) {
+            // only statistics were read while the build ran, the samples
+            // shown by the drill-down are stored from the copies
+            for (PerformanceReport copy : parser.parse(build,
+                copyReportsToMaster(build, parser, logger, tailed), listener)) {
+              try {
+                SampleStore.write(PerformanceReportMap.getSampleStore(build,
+                    parser, copy.getReportFileName()), copy);
+              } finally {
+                copy.discardSamples();
+              }
+            }
+          }
+        }
+        files = others;
+        if (files.isEmpty()) {
+          continue;
+        }
+      }
+
+      if (parseOnSlave) {
+        slaveReports.put(parser, files);
+      } else {
+        localReports.put(parser, copyReportsToMaster(build, parser, logger, files));
+      }
+    }
+
+    List<PerformanceReport> parsedReports = ParallelReportParser.parse(
+        build, localReports, listener);
+    for (Map.Entry<PerformanceReportParser, List<FilePath>> entry : slaveReports.entrySet()) {
+      parsedReports.addAll(parseOnSlave(build, entry.getKey(),
+          entry.getValue(), percentileValues, listener));
+      if (!discardReportFiles) {
+        copyReportsToMaster(build, entry.getKey(), logger, entry.getValue());
+      }
+    }
+
+    parsedReports.addAll(liveReports);
+    if (live != null) {
+      build.getActions().remove(live);
+    }
+
+    // mark the build as unstable or failure depending on the outcome.
+    for (PerformanceReport r : parsedReports) {
+      r.setBuild(build);
+      r.setErrorStream(logger);
+      r.setPercentiles(percentileValues);
+      double errorPercent = r.errorPercent();
+      if (errorFailedThreshold > 0 && errorPercent >= errorFailedThreshold) {
+        build.setResult(Result.FAILURE);
+      } else if (errorUnstableThreshold > 0
+          && errorPercent >= errorUnstableThreshold) {
+        build.setResult(Result.UNSTABLE);
+      }
+      logger.println("Performance: File " + r.getReportFileName()
+          + " reported " + errorPercent
+          + "% of errors during the tests. Build status is: "
+          + build.getResult());
+      if (slaRuleMatcher != null && slaRuleMatcher.size() > 0) {
+        Result result = slaRuleMatcher.check(r, logger);
+        if (result.isWorseThan(Result.SUCCESS)) {
+          build.setResult(result);
+        }
+      }
+      if (baseline != null) {
+        PerformanceReport baselineReport = PerformanceReportMap.readStoredSummary(
+            baseline, r.getParser(), r.getReportFileName());
+        if (baselineReport == null) {
+          logger.println("Performance: Build " + baseline.getDisplayName()
+              + " has no summary of " + r.getReportFileName()
+              + " to compare with");
+        } else {
+          if (regressionCheck != null) {
+            Result result = regressionCheck.check(r, baselineReport, logger);
+            if (result.isWorseThan(Result.SUCCESS)) {
+              build.setResult(result);
+            }
+          }
+          if (significanceCheck != null) {
+            Result result = significanceCheck.check(r, baselineReport, logger);
+            if (result.isWorseThan(Result.SUCCESS)) {
+              build.setResult(result);
+            }
+          }
+        }
+      }
+      PerformanceReportMap.writeSummary(PerformanceReportMap.getPerformanceSummary(
+          build, r.getParser(), r.getReportFileName()), r);
+      try {
+        SampleStore.write(PerformanceReportMap.getSampleStore(build,
+            r.getParser(), r.getReportFileName()), r);
+      } finally {
+        r.discardSamples();
+      }
+      TrendIndex.get(build.getProject()).append(build, r);
+    }
+
+    if (discardReportFiles) {
+      for (List<File> files : localReports.values()) {
+        for (File f : files) {
+          f.delete();
         }
-        logger.println("Performance: File " + r.getReportFileName()
-            + " reported " + errorPercent
-            + "% of errors during the tests. Build status is: "
-            + build.getResult());
       }
     }
 
     return true;
   }
 
-  private List<File> copyReportsToMaster(AbstractBuild<?, ?> build,
-      PrintStream logger, List<FilePath> files) throws IOException,
+  /**
+   * Returns the check of the metric against the baseline, or null if no
+   * regression threshold is configured or the metric is invalid.
+   */
+  private RegressionCheck createRegressionCheck(PrintStream logger) {
+    if (regressionUnstableThreshold <= 0 && regressionFailedThreshold <= 0) {
+      return null;
+    }
+    ReportMetric metric;
+    try {
+      metric = ReportMetric.parse(regressionMetric);
+    } catch (IllegalArgumentException e) {
+      logger.println("Performance: Ignoring invalid regression metric '"
+          + regressionMetric + "'");
+      return null;
+    }
+    if (regressionUnstableThreshold > 0) {
+      logger.println("Performance: " + metric + " worse than the baseline by more than "
+          + regressionUnstableThreshold + "% sets the build as "
+          + Result.UNSTABLE.toString().toLowerCase());
+    }
+    if (regressionFailedThreshold > 0) {
+      logger.println("Performance: " + metric + " worse than the baseline by more than "
+          + regressionFailedThreshold + "% sets the build as "
+          + Result.FAILURE.toString().toLowerCase());
+    }
+    return new RegressionCheck(metric, regressionUnstableThreshold,
+        regressionFailedThreshold);
+  }
+
+  /**
+   * Returns the pinned baseline build or else the previous successful one,
+   * or null if there is none.
+   */
+  private AbstractBuild<?, ?> getBaselineBuild(AbstractBuild<?, ?> build,
+      PrintStream logger) {
+    AbstractBuild<?, ?> baseline;
+    if (baselineBuild > 0) {
+      baseline = build.getProject().getBuildByNumber(baselineBuild);
+    } else {
+      baseline = build.getPreviousSuccessfulBuild();
+    }
+    if (baseline == null) {
+      logger.println("Performance: No baseline build to compare with");
+    } else {
+      logger.println("Performance: Comparing with the baseline build "
+          + baseline.getDisplayName());
+    }
+    return baseline;
+  }
+
+  /**
+   * Parses the reports on the node that holds them, see
+   * {@link RemoteReportParser}.
+   */
+  private List<PerformanceReport> parseOnSlave(AbstractBuild<?, ?> build,
+      PerformanceReportParser parser, List<FilePath> files,
+      double[] percentileValues, BuildListener listener) throws IOException,
       InterruptedException {
+    List<String> paths = new ArrayList<String>();
+    for (FilePath src : files) {
+      if (src.isDirectory()) {
+        listener.getLogger().println("Performance: File '" + src.getName()
+            + "' is a directory, not a Performance Report");
+        continue;
+      }
+      paths.add(src.getRemote());
+    }
+    List<PerformanceReport> reports = build.getWorkspace().act(
+        new RemoteReportParser(parser, paths, percentileValues, listener));
+    for (PerformanceReport r : reports) {
+      r.setParser(parser);
+    }
+    return reports;
+  }
+
+  private List<File> copyReportsToMaster(AbstractBuild<?, ?> build,
+      PerformanceReportParser parser, PrintStream logger, List<FilePath> files)
+      throws IOException, InterruptedException {
     List<File> localReports = new ArrayList<File>();
     for (FilePath src : files) {
-      final File localReport = getPerformanceReport(build, src.getName());
+      File localReport = getPerformanceReport(build, parser, src.getName());
       if (src.isDirectory()) {
         logger.println("Performance: File '" + src.getName()
             + "' is a directory, not a Performance Report");
         continue;
       }
-      src.copyTo(new FilePath(localReport));
+      if (compressReportFiles) {
+        localReport = new File(localReport.getPath()
+            + PerformanceReportParser.COMPRESSED_SUFFIX);
+        localReport.getParentFile().mkdirs();
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(localReport));
+        try {
+          src.copyTo(out);
+        } finally {
+          out.close();
+        }
+      } else {
+        src.copyTo(new FilePath(localReport));
+      }
       localReports.add(localReport);
     }
     return localReports;
@@ -241,6 +592,12 @@ public class PerformancePublisher extends Recorder {
     // data format migration
     if (parsers == null)
       parsers = new ArrayList<PerformanceReportParser>();
+    if (percentiles == null)
+      percentiles = "";
+    if (regressionMetric == null)
+      regressionMetric = DEFAULT_REGRESSION_METRIC;
+    if (slaRules == null)
+      slaRules = new ArrayList<SlaRule>();
     if (filename != null) {
       parsers.add(new JMeterParser(filename));
       filename = null;
@@ -265,6 +622,86 @@ public class PerformancePublisher extends Recorder {
         100));
   }
 
+  public String getPercentiles() {
+    return percentiles;
+  }
+
+  public void setPercentiles(String percentiles) {
+    this.percentiles = percentiles;
+  }
+
+  public boolean isParseOnSlave() {
+    return parseOnSlave;
+  }
+
+  public void setParseOnSlave(boolean parseOnSlave) {
+    this.parseOnSlave = parseOnSlave;
+  }
+
+  public boolean isDiscardReportFiles() {
+    return discardReportFiles;
+  }
+
+  public void setDiscardReportFiles(boolean discardReportFiles) {
+    this.discardReportFiles = discardReportFiles;
+  }
+
+  public boolean isCompressReportFiles() {
+    return compressReportFiles;
+  }
+
+  public void setCompressReportFiles(boolean compressReportFiles) {
+    this.compressReportFiles = compressReportFiles;
+  }
+
+  public String getRegressionMetric() {
+    return regressionMetric;
+  }
+
+  public void setRegressionMetric(String regressionMetric) {
+    this.regressionMetric = regressionMetric;
+  }
+
+  public int getRegressionUnstableThreshold() {
+    return regressionUnstableThreshold;
+  }
+
+  public void setRegressionUnstableThreshold(int regressionUnstableThreshold) {
+    this.regressionUnstableThreshold = Math.max(0, regressionUnstableThreshold);
+  }
+
+  public int getRegressionFailedThreshold() {
+    return regressionFailedThreshold;
+  }
+
+  public void setRegressionFailedThreshold(int regressionFailedThreshold) {
+    this.regressionFailedThreshold = Math.max(0, regressionFailedThreshold);
+  }
+
+  public int getBaselineBuild() {
+    return baselineBuild;
+  }
+
+  public void setBaselineBuild(int baselineBuild) {
+    this.baselineBuild = Math.max(0, baselineBuild);
+  }
+
+  public double getSignificanceLevel() {
+    return significanceLevel;
+  }
+
+  public void setSignificanceLevel(double significanceLevel) {
+    this.significanceLevel = Math.max(0, Math.min(significanceLevel, 1));
+  }
+
+  public int getSignificanceMinEffect() {
+    return significanceMinEffect;
+  }
+
+  public void setSignificanceMinEffect(int significanceMinEffect) {
+    this.significanceMinEffect = Math.max(0, significanceMinEffect);
+  }
+
   public String getFilename() {
     return filename;
   }
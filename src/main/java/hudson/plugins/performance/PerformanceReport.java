@@ -8,9 +8,11 @@ import org.xml.sax.SAXException;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,13 +25,35 @@ import java.util.Map;
  * This object belongs under {@link PerformanceReportMap}.
  */
 public class PerformanceReport extends AbstractReport
-    implements Comparable<PerformanceReport>, StatsReport {
+    implements Comparable<PerformanceReport>, StatsReport, SampleSink, Serializable {
 
-  private PrintStream errorStream;
+  private transient PrintStream errorStream;
 
   private String reportFileName = null;
 
-  private AggregateStatistics stats = new AggregateStatistics.Unfrozen();
+  /**
+   * Statistics over all the samples of the report, merged from the
+   * {@link UriReport}s on first use after samples were added.
+   */
+  private AggregateStatistics stats;
+
+  /**
+   * Timeline of all the samples, merged from the {@link UriReport}s on first
+   * use after samples were added.
+   */
+  private transient Timeline timeline;
+
+  /**
+   * Attribute statistics of all the samples, merged from the
+   * {@link UriReport}s on first use after samples were added.
+   */
+  private transient AttributeStatistics attributes;
+
+  /**
+   * Percentiles, in percent, kept in the summary besides the median and the
+   * 90% line.
+   */
+  private double[] percentiles = new double[0];
 
   /**
    * {@link AbstractBuild} that this performance report is associated with
@@ -56,23 +80,201 @@ public class PerformanceReport extends AbstractReport
    */
   private final Map<String, UriReport> uriReportMap = new LinkedHashMap<String, UriReport>();
 
+  /**
+   * Label ids handed out to parsers, see {@link SampleSink}.
+   */
+  private transient Map<String, Integer> labelIds;
+
+  /**
+   * {@link UriReport}s indexed by label id.
+   */
+  private transient List<UriReport> uriReportsByLabelId;
+
+  /**
+   * Full blocks of the samples of the {@link UriReport}s, null until a block
+   * is full.
+   */
+  private transient SampleSpill spill;
+
+  /**
+   * Whether the samples are no longer kept, see {@link #discardSamples()}.
+   */
+  private transient boolean samplesDiscarded;
+
+  /**
+   * Adds a single sample. Parsers should rather stream their samples through
+   * a {@link SampleBatch}; this is kept for parsers built around
+   * {@link HttpSample}.
+   */
   public void addSample(HttpSample pHttpSample) throws SAXException {
-    String uri = pHttpSample.getUri();
-    if (uri == null) {
+    int labelId = getLabelId(pHttpSample.getUri());
+    if (labelId < 0) {
+      return;
+    }
+    uriReportsByLabelId.get(labelId).addHttpSample(pHttpSample);
+    stats = null;
+    timeline = null;
+    attributes = null;
+  }
+
+  public int getLabelId(String label) {
+    if (label == null) {
       getErrorStream().println(
           "label cannot be empty, please ensure your jmx file specifies name properly for each http sample: skipping sample");
-      return;
+      return -1;
+    }
+    if (labelIds == null) {
+      labelIds = new HashMap<String, Integer>();
+      uriReportsByLabelId = new ArrayList<UriReport>();
+    }
+    Integer labelId = labelIds.get(label);
+    if (labelId == null) {
+      String staplerUri = label.replace("http:", "").replaceAll("/", "_");
+      UriReport uriReport = uriReportMap.get(staplerUri);
+      if (uriReport == null) {
+        uriReport = new UriReport(this, staplerUri, label);
+        if (samplesDiscarded) {
+          uriReport.discardSamples();
+        }
+        uriReportMap.put(staplerUri, uriReport);
+      }
+      labelId = uriReportsByLabelId.size();
+      uriReportsByLabelId.add(uriReport);
+      labelIds.put(label, labelId);
+    }
+    return labelId;
+  }
+
+  public void addSamples(SampleBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      UriReport uriReport = uriReportsByLabelId.get(batch.getLabelId(i));
+      uriReport.addSample(batch.getTimestamp(i), batch.getElapsed(i),
+          batch.isSuccessful(i));
+      uriReport.addAttributes(batch.getLatency(i), batch.getConnect(i),
+          batch.getBytes(i), batch.getAllThreads(i), batch.getGroupThreads(i),
+          batch.getHost(i));
+    }
+    stats = null;
+    timeline = null;
+    attributes = null;
+  }
+
+  /**
+   * Adds the samples of a report parsed from a later part of the same file,
+   * so that parts parsed concurrently give the same report as a single pass.
+   * The samples kept by the other report are moved to this one.
+   */
+  public void merge(PerformanceReport other) {
+    for (UriReport uriReport : other.uriReportMap.values()) {
+      int labelId = getLabelId(uriReport.getUri());
+      uriReportsByLabelId.get(labelId).merge(uriReport);
+    }
+    other.discardSamples();
+    stats = null;
+    timeline = null;
+    attributes = null;
+  }
+
+  /**
+   * Returns the statistics over all the samples of this report. They are
+   * merged from the {@link UriReport}s, so each sample is only recorded once
+   * while parsing.
+   */
+  public AggregateStatistics getStatistics() {
+    if (stats == null) {
+      AggregateStatistics.Unfrozen merged = new AggregateStatistics.Unfrozen();
+      merged.setTrackedPercentiles(getPercentiles());
+      for (UriReport uriReport : uriReportMap.values()) {
+        merged.merge(uriReport.getStats());
+      }
+      stats = merged;
     }
-    String staplerUri = uri.replace("http:", "").replaceAll("/", "_");
-    UriReport uriReport = uriReportMap.get(staplerUri);
-    if (uriReport == null) {
-      uriReport = new UriReport(this, staplerUri, uri);
-      uriReportMap.put(staplerUri, uriReport);
+    return stats;
+  }
+
+  /**
+   * Sets the statistics of a report read from its summary.
+   */
+  void setStatistics(AggregateStatistics stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * Returns the timeline of all the samples of this report, merged from the
+   * {@link UriReport}s like the statistics.
+   */
+  public Timeline getTimeline() {
+    if (timeline == null) {
+      Timeline merged = new Timeline();
+      for (UriReport uriReport : uriReportMap.values()) {
+        merged.merge(uriReport.getTimeline());
+      }
+      timeline = merged;
+    }
+    return timeline;
+  }
+
+  /**
+   * Returns the statistics of the optional attributes of all the samples of
+   * this report, merged from the {@link UriReport}s.
+   */
+  public AttributeStatistics getAttributes() {
+    if (attributes == null) {
+      AttributeStatistics merged = new AttributeStatistics();
+      for (UriReport uriReport : uriReportMap.values()) {
+        merged.merge(uriReport.getAttributes());
+      }
+      attributes = merged;
+    }
+    return attributes;
+  }
+
+  /**
+   * Adds a {@link UriReport} read from the summary.
+   */
+  void addUriReport(UriReport uriReport) {
+    uriReportMap.put(uriReport.getStaplerUri(), uriReport);
+  }
+
+  /**
+   * Replaces the statistics of this report and of its {@link UriReport}s by
+   * their frozen values, which is all a summary keeps. The percentiles must
+   * be set before.
+   */
+  public void freeze() {
+    stats = getStatistics().asFrozen();
+    for (UriReport uriReport : uriReportMap.values()) {
+      uriReport.freeze();
+    }
+    discardSamples();
+  }
+
+  /**
+   * Returns the temporary file of the samples that don't fit in memory.
+   */
+  synchronized SampleSpill getSampleSpill() {
+    if (spill == null) {
+      spill = new SampleSpill();
+    }
+    return spill;
+  }
+
+  /**
+   * Stops keeping the samples of this report and deletes those written to
+   * the {@link SampleSpill}, once they are stored or when only the
+   * statistics are needed.
+   */
+  public void discardSamples() {
+    samplesDiscarded = true;
+    for (UriReport uriReport : uriReportMap.values()) {
+      uriReport.discardSamples();
+    }
+    synchronized (this) {
+      if (spill != null) {
+        spill.delete();
+        spill = null;
+      }
     }
-    uriReport.addHttpSample(pHttpSample);
-    AggregateStatistics.Unfrozen ufstats = stats.asUnfrozen();
-    ufstats.sample(pHttpSample.getDuration(), !pHttpSample.isSuccessful());
-    stats = ufstats;
   }
 
   public int compareTo(PerformanceReport jmReport) {
@@ -83,35 +285,61 @@ public class PerformanceReport extends AbstractReport
   }
 
   public int countErrors() {
-    return stats.getErrorCount();
+    return getStatistics().getErrorCount();
   }
 
   public double errorPercent() {
-    return stats.getErrorPercent();
+    return getStatistics().getErrorPercent();
   }
 
   public long getAverage() {
-    return (long)stats.getAverage();
+    return (long)getStatistics().getAverage();
   }
 
   public long get90Line() {
-    return stats.get90Line();
+    return getStatistics().get90Line();
   }
 
   public long getMedian() {
-    return stats.getMedian();
+    return getStatistics().getMedian();
+  }
+
+  public double[] getPercentiles() {
+    return percentiles == null ? new double[0] : percentiles;
+  }
+
+  /**
+   * Sets the percentiles, in percent, computed for this report and each of
+   * its {@link UriReport}s when the summary is written.
+   */
+  public void setPercentiles(double[] percentiles) {
+    this.percentiles = percentiles == null ? new double[0] : percentiles;
+    if (stats instanceof AggregateStatistics.Unfrozen) {
+      ((AggregateStatistics.Unfrozen) stats).setTrackedPercentiles(this.percentiles);
+    }
+    for (UriReport uriReport : uriReportMap.values()) {
+      uriReport.setPercentiles(this.percentiles);
+    }
+  }
+
+  public long getPercentile(double percentile) {
+    return getStatistics().getPercentile(percentile / 100);
   }
 
   public long getMax() {
-    return stats.getMax();
+    return getStatistics().getMax();
   }
 
   public long getMin() {
-    return stats.getMin();
+    return getStatistics().getMin();
+  }
+
+  public double getThroughput() {
+    return getStatistics().getThroughput();
   }
 
   public int size() {
-    return stats.getSize();
+    return getStatistics().getSize();
   }
 
   public String getDisplayName() {
@@ -1,39 +1,68 @@
 package hudson.plugins.performance;
 
-import hudson.FilePath;
-
 import hudson.model.AbstractBuild;
 import hudson.model.Hudson;
 import hudson.model.ModelObject;
 import hudson.model.TaskListener;
+import hudson.util.ChartUtil;
+import hudson.util.ColorPalette;
+import hudson.util.DataSetBuilder;
+import hudson.util.ShiftedCategoryAxis;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
 import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.renderer.category.LineAndShapeRenderer;
+import org.jfree.chart.title.LegendTitle;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.ui.RectangleEdge;
+import org.jfree.ui.RectangleInsets;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
 /**
  * Root object of a performance report.
  */
 public class PerformanceReportMap implements ModelObject {
 
+  /**
+   * Value of the <code>metric</code> parameter of the timeline graph that
+   * draws the durations of the samples.
+   */
+  public static final String TIMELINE_LATENCY = "latency";
+
   private static final Logger LOGGER = Logger.getLogger(PerformanceReportMap.class.getName());
 
   /**
@@ -45,17 +74,34 @@ public class PerformanceReportMap implements ModelObject {
    * {@link PerformanceReport}s are keyed by {@link PerformanceReport#reportFileName}
    *
    * Test names are arbitrary human-readable and URL-safe string that identifies an individual report.
+   * Each report is only loaded when it is first asked for.
    */
-  private Map<String, PerformanceReport> performanceReportMap = new LinkedHashMap<String, PerformanceReport>();
+  private volatile Map<String, LazyReport> performanceReportMap = new LinkedHashMap<String, LazyReport>();
 
   private static final String PERFORMANCE_REPORTS_DIRECTORY = "performance-reports";
   private static final String PERFORMANCE_SUMMARIES_DIRECTORY = "performance-summaries";
+  private static final String PERFORMANCE_SAMPLES_DIRECTORY = "performance-samples";
 
   /**
-   * Parses the reports and build a {@link PerformanceReportMap}.
-   *
-   * @throws IOException
-   *      If a report fails to parse.
+   * Whether the converter of the statistics in XML summaries is registered.
+   */
+  private static boolean converterRegistered = false;
+
+  /**
+   * Locks of the migrations of XML summaries, shared by the summaries whose
+   * paths hash alike, so that a summary is migrated by one thread at a time.
+   */
+  private static final Object[] MIGRATION_LOCKS = new Object[16];
+
+  static {
+    for (int i = 0; i < MIGRATION_LOCKS.length; i++) {
+      MIGRATION_LOCKS[i] = new Object();
+    }
+  }
+
+  /**
+   * Lists the reports of a build, which are loaded, and parsed if they have
+   * no summary yet, when they are first asked for.
    */
   PerformanceReportMap(PerformanceBuildAction buildAction, TaskListener listener)
       throws IOException, InterruptedException {
@@ -72,7 +118,7 @@ public class PerformanceReportMap implements ModelObject {
     });
     // this may fail, if the build itself failed, we need to recover gracefully
     if (files != null) {
-      loadAll(Arrays.asList(files), new JMeterParser(""), listener);
+      addAll(Arrays.asList(files), new JMeterParser(""), listener);
     }
 
     // otherwise subdirectory name designates the parser ID.
@@ -86,38 +132,149 @@ public class PerformanceReportMap implements ModelObject {
       for (File dir : dirs) {
         PerformanceReportParser p = buildAction.getParserById(dir.getName());
         if (p != null) {
-          loadAll(Arrays.asList(dir.listFiles()), p, listener);
+          addAll(Arrays.asList(dir.listFiles()), p, listener);
+        }
+      }
+    }
+
+    // reports parsed on the slave, or whose files were not kept, only have a summary
+    File summaries = new File(getBuild().getRootDir(),
+        PerformanceReportMap.getPerformanceSummaryDirRelativePath());
+    File[] summaryFiles = summaries.listFiles();
+    if (summaryFiles != null) {
+      for (File f : summaryFiles) {
+        if (!f.isDirectory()) {
+          addSummary(f, new JMeterParser(""), listener);
+        } else {
+          PerformanceReportParser p = buildAction.getParserById(f.getName());
+          File[] children = f.listFiles();
+          if (p != null && children != null) {
+            for (File summary : children) {
+              addSummary(summary, p, listener);
+            }
+          }
         }
       }
     }
   }
 
-  private void loadAll(Collection<File> files, PerformanceReportParser parser, TaskListener listener)
-      throws IOException, InterruptedException {
-    for (File f: files) {
-      try {
-        PerformanceReport report = loadPerformanceReport(f, parser, listener);
-        performanceReportMap.put(report.getReportFileName(), report);
-      } catch (PerformanceReportParser.ParseException exc) {
-        // Don't add a report that won't parse to the results
+  private void addSummary(File summary, PerformanceReportParser parser,
+      TaskListener listener) {
+    if (!AtomicFile.isTemporary(summary)
+        && !performanceReportMap.containsKey(summary.getName())) {
+      performanceReportMap.put(summary.getName(), new LazyReport(null,
+          summary, parser, listener));
+    }
+  }
+
+  private PerformanceReport loadSummary(File summary,
+      PerformanceReportParser parser, TaskListener listener) {
+    try {
+      PerformanceReport report = readSummary(summary);
+      report.setBuild(getBuild());
+      report.setParser(parser);
+      report.setListener(listener);
+      return report;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed to load the performance summary " + summary, e);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Failed to load the performance summary " + summary, e);
+    }
+    return null;
+  }
+
+  private static PerformanceReport readSummary(File summary) throws IOException {
+    PerformanceReport report = SummaryStore.read(summary);
+    if (report == null) {
+      // written as XML by an earlier version, migrated once
+      Object lock = MIGRATION_LOCKS[(summary.getAbsolutePath().hashCode() & 0x7fffffff)
+          % MIGRATION_LOCKS.length];
+      synchronized (lock) {
+        // unless another thread just did
+        report = SummaryStore.read(summary);
+        if (report == null) {
+          report = readXmlSummary(summary);
+          SummaryStore.write(summary, report);
+        }
       }
     }
+    return report;
+  }
+
+  /**
+   * Reads the summary a build stored for a report, without parsing the report
+   * file, or returns null if the build has none.
+   */
+  static PerformanceReport readStoredSummary(AbstractBuild<?, ?> build,
+      PerformanceReportParser parser, String reportFileName) {
+    File summary = getPerformanceSummary(build, parser, reportFileName);
+    if (!summary.isFile()) {
+      return null;
+    }
+    try {
+      return readSummary(summary);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed to load the performance summary " + summary, e);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Failed to load the performance summary " + summary, e);
+    }
+    return null;
+  }
+
+  private static PerformanceReport readXmlSummary(File summary) throws IOException {
+    registerConverter();
+    InputStream in = new FileInputStream(summary);
+    try {
+      return (PerformanceReport) Hudson.XSTREAM.fromXML(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static synchronized void registerConverter() {
+    if (!converterRegistered) {
+      Hudson.XSTREAM.registerConverter(new AggregateStatistics.Unfrozen.UnfrozenConverter());
+      converterRegistered = true;
+    }
+  }
+
+  /**
+   * Writes the summary of a report that was just parsed, with the
+   * percentiles already set.
+   */
+  static void writeSummary(File summary, PerformanceReport report)
+      throws IOException {
+    SummaryStore.write(summary, report);
+  }
+
+  private void addAll(Collection<File> files, PerformanceReportParser parser, TaskListener listener) {
+    for (File f: files) {
+      performanceReportMap.put(PerformanceReportParser.getReportFileName(f),
+          new LazyReport(f, null, parser, listener));
+    }
   }
 
   private PerformanceReport loadPerformanceReport(File reportFile, PerformanceReportParser parser, TaskListener listener)
       throws IOException, PerformanceReportParser.ParseException, InterruptedException {
     final Hudson app = Hudson.getInstance();
-    FilePath summaryReport = new FilePath(new File(reportFile.toString().replaceFirst(
+    File summaryReport = new File(reportFile.getParent().replaceFirst(
       getPerformanceReportDirRelativePath(),
       getPerformanceSummaryDirRelativePath()
-    )));
-    Hudson.XSTREAM.registerConverter(new AggregateStatistics.Unfrozen.UnfrozenConverter());
+    ), PerformanceReportParser.getReportFileName(reportFile));
     PerformanceReport report = null;
     try {
-      report = (PerformanceReport)Hudson.XSTREAM.fromXML(summaryReport.read());
+      report = readSummary(summaryReport);
     } catch (FileNotFoundException exc) {
       report = parser.parse(getBuild(), reportFile, listener);
-      Hudson.XSTREAM.toXML(report, summaryReport.write());
+      try {
+        report.setPercentiles(buildAction.getPercentiles());
+        writeSummary(summaryReport, report);
+        SampleStore.write(getSampleStore(getBuild(), parser,
+            report.getReportFileName()), report);
+      } finally {
+        // the pages read the samples from the store
+        report.discardSamples();
+      }
     }
     report.setBuild(getBuild());
     report.setParser(parser);
@@ -138,6 +295,83 @@ public class PerformanceReportMap implements ModelObject {
     return Messages.Report_DisplayName();
   }
 
+  /**
+   * A report of the build, loaded at most once even if several threads ask
+   * for it at the same time.
+   */
+  private final class LazyReport {
+    /**
+     * The report file, null if the build only kept the summary.
+     */
+    private final File file;
+
+    private final File summary;
+
+    private final PerformanceReportParser parser;
+
+    private final TaskListener listener;
+
+    private boolean loaded;
+
+    /**
+     * Volatile so that {@link #peek()} doesn't wait for a report being loaded.
+     */
+    private volatile PerformanceReport report;
+
+    LazyReport(File file, File summary, PerformanceReportParser parser,
+        TaskListener listener) {
+      this.file = file;
+      this.summary = summary;
+      this.parser = parser;
+      this.listener = listener;
+    }
+
+    LazyReport(PerformanceReport report) {
+      this(null, null, report.getParser(), null);
+      set(report);
+    }
+
+    /**
+     * Returns the report, or null if it failed to load. A report that failed
+     * to load is tried again by the next request, unless its file won't
+     * parse.
+     */
+    synchronized PerformanceReport get() {
+      if (!loaded) {
+        if (file == null) {
+          report = loadSummary(summary, parser, listener);
+        } else {
+          try {
+            report = loadPerformanceReport(file, parser, listener);
+          } catch (PerformanceReportParser.ParseException exc) {
+            // Don't add a report that won't parse to the results
+            loaded = true;
+          } catch (IOException exc) {
+            LOGGER.log(Level.WARNING, "Failed to load the performance report " + file, exc);
+          } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        if (report != null) {
+          loaded = true;
+        }
+      }
+      return report;
+    }
+
+    /**
+     * Returns the report if it is already loaded.
+     */
+    PerformanceReport peek() {
+      return report;
+    }
+
+    synchronized void set(PerformanceReport report) {
+      this.report = report;
+      this.loaded = true;
+    }
+  }
+
   public List<PerformanceReport> getPerformanceListOrdered() {
     List<PerformanceReport> listPerformance = new ArrayList<PerformanceReport>(
         getPerformanceReportMap().values());
@@ -145,8 +379,32 @@ public class PerformanceReportMap implements ModelObject {
     return listPerformance;
   }
 
+  /**
+   * Returns all the reports of the build, loading those that are not yet.
+   */
   public Map<String, PerformanceReport> getPerformanceReportMap() {
-    return performanceReportMap;
+    Map<String, PerformanceReport> reports = new LinkedHashMap<String, PerformanceReport>();
+    for (Map.Entry<String, LazyReport> entry : performanceReportMap.entrySet()) {
+      PerformanceReport report = entry.getValue().get();
+      if (report != null) {
+        reports.put(entry.getKey(), report);
+      }
+    }
+    return reports;
+  }
+
+  /**
+   * Returns the reports that are already loaded.
+   */
+  List<PerformanceReport> getLoadedReports() {
+    List<PerformanceReport> reports = new ArrayList<PerformanceReport>();
+    for (LazyReport lazyReport : performanceReportMap.values()) {
+      PerformanceReport report = lazyReport.peek();
+      if (report != null) {
+        reports.add(report);
+      }
+    }
+    return reports;
   }
 
   /**
@@ -158,7 +416,8 @@ public class PerformanceReportMap implements ModelObject {
    * @return
    */
   public PerformanceReport getPerformanceReport(String performanceReportName) {
-    return performanceReportMap.get(performanceReportName);
+    LazyReport report = performanceReportMap.get(performanceReportName);
+    return report == null ? null : report.get();
   }
 
   /**
@@ -182,10 +441,27 @@ public class PerformanceReportMap implements ModelObject {
           GraphConfigurationDetail.SEPARATOR);
       String filename = st.nextToken();
       String uri = st.nextToken();
-      Map<String, PerformanceReport> reportMap = getPerformanceReportMap();
-      PerformanceReport perfReport = reportMap.get(filename);
+      PerformanceReport perfReport = getPerformanceReport(filename);
       UriReport uriPerfReport = perfReport.getUriReportMap().get(uri);
-      if (uriPerfReport.hasHttpSamples()) {
+      if (uriPerfReport.hasHttpSamples() || uriPerfReport.hasStoredSamples()) {
+        return uriPerfReport;
+      }
+      try {
+        if (perfReport.getParser() != null) {
+          File store = getSampleStore(getBuild(), perfReport.getParser(),
+              perfReport.getReportFileName());
+          // the pages of samples are read from the store as they are shown
+          SampleColumns columns = SampleStore.open(store, uriPerfReport.getStaplerUri());
+          if (columns != null) {
+            uriPerfReport.setStoredSamples(columns);
+            return uriPerfReport;
+          }
+        }
+      } catch (IOException exc) {
+        LOGGER.log(Level.WARNING, "Unable to read the samples of uri report " + uriReport, exc);
+      }
+      if (perfReport.getSourceFile() == null) {
+        // without a sample store, the samples are only available while the report file is kept
         return uriPerfReport;
       } else {
         try {
@@ -194,8 +470,21 @@ public class PerformanceReportMap implements ModelObject {
             perfReport.getSourceFile(),
             perfReport.getListener()
           );
-          reportMap.put(parsed.getReportFileName(), parsed);
-          return parsed.getUriReportMap().get(uri);
+          parsed.setPercentiles(buildAction.getPercentiles());
+          File store = getSampleStore(getBuild(), perfReport.getParser(),
+              parsed.getReportFileName());
+          try {
+            SampleStore.write(store, parsed);
+          } finally {
+            parsed.discardSamples();
+          }
+          performanceReportMap.get(filename).set(parsed);
+          UriReport parsedUriReport = parsed.getUriReportMap().get(uri);
+          if (parsedUriReport != null) {
+            parsedUriReport.setStoredSamples(SampleStore.open(store,
+                parsedUriReport.getStaplerUri()));
+          }
+          return parsedUriReport;
         } catch (IOException exc) {
           LOGGER.log(Level.SEVERE, "Unable to re-parse for uri report " + uriReport, exc);
           return uriPerfReport;
@@ -209,6 +498,148 @@ public class PerformanceReportMap implements ModelObject {
     }
   }
 
+  /**
+   * Draws the timeline of a report, or of one of its URIs if the
+   * <code>uri</code> parameter is given: the durations of the samples if the
+   * <code>metric</code> parameter is <code>latency</code>, the requests and
+   * errors per second otherwise.
+   */
+  public void doTimelineGraph(StaplerRequest request, StaplerResponse response)
+      throws IOException {
+    PerformanceReportPosition performanceReportPosition = new PerformanceReportPosition();
+    request.bindParameters(performanceReportPosition);
+    String reportName = performanceReportPosition.getPerformanceReportPosition();
+    if (reportName == null) {
+      if (performanceReportMap.size() != 1) {
+        return;
+      }
+      reportName = performanceReportMap.keySet().iterator().next();
+    }
+    PerformanceReport report = getPerformanceReport(reportName);
+    if (report == null) {
+      return;
+    }
+    String uri = request.getParameter("uri");
+    UriReport uriReport = uri == null ? null : report.getUriReportMap().get(uri);
+    if (uri != null && uriReport == null) {
+      return;
+    }
+    if (ChartUtil.awtProblemCause != null) {
+      // not available. send out error message
+      response.sendRedirect2(request.getContextPath() + "/images/headless.png");
+      return;
+    }
+    final Timeline timeline = uriReport == null ? report.getTimeline() : uriReport.getTimeline();
+    final boolean latency = TIMELINE_LATENCY.equals(request.getParameter("metric"));
+    AbstractBuild<?, ?> build = getBuild();
+    // the timeline of a build doesn't change once its reports are published
+    String key = "timeline|" + build.getProject().getFullName() + '#' + build.getNumber()
+        + '@' + build.getTimeInMillis() + '|' + reportName + '|' + uri + '|' + latency;
+    ChartCache.getInstance().generateGraph(request, response, key,
+        new ChartCache.Source() {
+          public JFreeChart createChart() {
+            return latency ? createTimelineChart(Messages.ReportMap_Latency(), "ms",
+                getLatencyData(timeline).build()) : createTimelineChart(
+                Messages.ReportMap_Throughput(), "/s", getThroughputData(timeline).build());
+          }
+        }, 600, 250);
+  }
+
+  private static DataSetBuilder<String, TimeLabel> getLatencyData(Timeline timeline) {
+    DataSetBuilder<String, TimeLabel> dataSetBuilder = new DataSetBuilder<String, TimeLabel>();
+    for (int i = 0; i < timeline.getBucketCount(); i++) {
+      TimeLabel label = new TimeLabel(timeline, i);
+      // no point is drawn for a bucket without samples
+      boolean empty = timeline.getCount(i) == 0;
+      dataSetBuilder.add(empty ? null : timeline.getPercentile(i, 0.5),
+          Messages.ProjectAction_Median(), label);
+      dataSetBuilder.add(empty ? null : timeline.getPercentile(i, 0.9),
+          Messages.ProjectAction_Line90(), label);
+      dataSetBuilder.add(empty ? null : timeline.getPercentile(i, 1),
+          Messages.ProjectAction_Maximum(), label);
+    }
+    return dataSetBuilder;
+  }
+
+  private static DataSetBuilder<String, TimeLabel> getThroughputData(Timeline timeline) {
+    DataSetBuilder<String, TimeLabel> dataSetBuilder = new DataSetBuilder<String, TimeLabel>();
+    double seconds = timeline.getBucketSize() / 1000.0;
+    for (int i = 0; i < timeline.getBucketCount(); i++) {
+      TimeLabel label = new TimeLabel(timeline, i);
+      dataSetBuilder.add(timeline.getThroughput(i), Messages.ReportMap_Requests(), label);
+      dataSetBuilder.add(timeline.getErrorCount(i) / seconds, Messages.ReportMap_Errors(), label);
+    }
+    return dataSetBuilder;
+  }
+
+  private static JFreeChart createTimelineChart(String title, String unit,
+      CategoryDataset dataset) {
+    final JFreeChart chart = ChartFactory.createLineChart(title, null, unit,
+        dataset, PlotOrientation.VERTICAL, true, true, false);
+
+    final LegendTitle legend = chart.getLegend();
+    legend.setPosition(RectangleEdge.RIGHT);
+
+    chart.setBackgroundPaint(Color.white);
+
+    final CategoryPlot plot = chart.getCategoryPlot();
+    plot.setBackgroundPaint(Color.WHITE);
+    plot.setOutlinePaint(null);
+    plot.setRangeGridlinesVisible(true);
+    plot.setRangeGridlinePaint(Color.black);
+
+    CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+    plot.setDomainAxis(domainAxis);
+    domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+    domainAxis.setLowerMargin(0.0);
+    domainAxis.setUpperMargin(0.0);
+    domainAxis.setCategoryMargin(0.0);
+
+    final LineAndShapeRenderer renderer = (LineAndShapeRenderer) plot.getRenderer();
+    renderer.setBaseStroke(new BasicStroke(2.0f));
+    ColorPalette.apply(renderer);
+
+    // crop extra space around the graph
+    plot.setInsets(new RectangleInsets(5.0, 0, 0, 5.0));
+
+    return chart;
+  }
+
+  /**
+   * Start time of a bucket of a timeline, ordered by time and shown to the
+   * second only if buckets are shorter than a minute.
+   */
+  static final class TimeLabel implements Comparable<TimeLabel> {
+    private final long time;
+
+    private final String text;
+
+    TimeLabel(Timeline timeline, int bucket) {
+      this.time = timeline.getBucketStart(bucket);
+      this.text = new SimpleDateFormat(timeline.getBucketSize() < 60 * 1000L
+          ? "HH:mm:ss" : "HH:mm").format(new Date(time));
+    }
+
+    public int compareTo(TimeLabel that) {
+      return time < that.time ? -1 : time == that.time ? 0 : 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof TimeLabel && ((TimeLabel) o).time == time;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (time ^ (time >>> 32));
+    }
+
+    @Override
+    public String toString() {
+      return text;
+    }
+  }
+
   public String getUrlName() {
     return "performanceReportList";
   }
@@ -219,7 +650,64 @@ public class PerformanceReportMap implements ModelObject {
 
   public void setPerformanceReportMap(
       Map<String, PerformanceReport> performanceReportMap) {
-    this.performanceReportMap = performanceReportMap;
+    Map<String, LazyReport> reports = new LinkedHashMap<String, LazyReport>();
+    for (Map.Entry<String, PerformanceReport> entry : performanceReportMap.entrySet()) {
+      reports.put(entry.getKey(), new LazyReport(entry.getValue()));
+    }
+    this.performanceReportMap = reports;
+  }
+
+  /**
+   * Returns the summary of a report parsed by the given parser.
+   */
+  public static File getPerformanceSummary(AbstractBuild<?, ?> build,
+      PerformanceReportParser parser, String reportFileName) {
+    return new File(build.getRootDir(), getRelativePath(
+        PERFORMANCE_SUMMARIES_DIRECTORY, parser.getDescriptor().getId() + "/"
+            + reportFileName));
+  }
+
+  /**
+   * Returns the {@link SampleStore} of a report parsed by the given parser.
+   */
+  public static File getSampleStore(AbstractBuild<?, ?> build,
+      PerformanceReportParser parser, String reportFileName) {
+    return new File(build.getRootDir(), getRelativePath(
+        PERFORMANCE_SAMPLES_DIRECTORY, parser.getDescriptor().getId() + "/"
+            + reportFileName));
+  }
+
+  /**
+   * Names of the reports of a build, whether their files were kept or only
+   * their summaries. Reports directly under the directories are for JMeter,
+   * the others are in a subdirectory named after their parser.
+   */
+  public static List<String> getPerformanceReportNames(AbstractBuild<?, ?> build) {
+    Set<String> names = new TreeSet<String>();
+    for (String dirname : new String[] { PERFORMANCE_REPORTS_DIRECTORY,
+        PERFORMANCE_SUMMARIES_DIRECTORY }) {
+      File[] files = new File(build.getRootDir(), dirname).listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File f : files) {
+        if (!f.isDirectory()) {
+          if (!AtomicFile.isTemporary(f)) {
+            names.add(PerformanceReportParser.getReportFileName(f));
+          }
+        } else {
+          File[] children = f.listFiles();
+          if (children != null) {
+            for (File child : children) {
+              if (!AtomicFile.isTemporary(child)) {
+                names.add(PerformanceReportParser.getReportFileName(child));
+              }
+            }
+          }
+        }
+      }
+    }
+    return new ArrayList<String>(names);
   }
 
   public static String getPerformanceReportFileRelativePath(
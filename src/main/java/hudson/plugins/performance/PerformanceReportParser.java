@@ -8,9 +8,14 @@ import hudson.model.Hudson;
 import hudson.model.TaskListener;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Parses performance result files into {@link PerformanceReport}s.
@@ -18,16 +23,23 @@ import java.util.Collection;
  *
  * <p>
  * Subtypes can define additional parser-specific parameters as instance fields.
+ * Parsers are sent to the slave that holds the reports when they are parsed
+ * there, so these fields must be serializable.
  * 
  * @author Kohsuke Kawaguchi
  */
 public abstract class PerformanceReportParser implements
-    Describable<PerformanceReportParser>, ExtensionPoint {
+    Describable<PerformanceReportParser>, ExtensionPoint, Serializable {
   /**
    * GLOB patterns that specify the performance report.
    */
   public final String glob;
 
+  /**
+   * Suffix of the reports stored compressed with gzip.
+   */
+  public static final String COMPRESSED_SUFFIX = ".gz";
+
   @DataBoundConstructor
   protected PerformanceReportParser(String glob) {
     this.glob = (glob == null || glob.length() == 0) ? getDefaultGlobPattern()
@@ -40,11 +52,15 @@ public abstract class PerformanceReportParser implements
   }
 
   /**
-   * Parses the specified reports into {@link PerformanceReport}s.
+   * Parses the specified reports into {@link PerformanceReport}s. By default
+   * the files are parsed concurrently with {@link ParallelReportParser}, and
+   * those that fail to parse are left out.
    */
-  public abstract Collection<PerformanceReport> parse(
+  public Collection<PerformanceReport> parse(
       AbstractBuild<?, ?> build, Collection<File> reports, TaskListener listener)
-      throws IOException;
+      throws IOException {
+    return ParallelReportParser.parse(this, build, reports, listener);
+  }
 
   /**
    * Parses the specified report into a {@link PerformanceReport}.
@@ -62,6 +78,37 @@ public abstract class PerformanceReportParser implements
     return Hudson.getInstance().getExtensionList(PerformanceReportParser.class);
   }
 
+  /**
+   * Opens a report for reading, decompressing it if its name ends with
+   * <code>.gz</code>.
+   */
+  public static InputStream openReport(File report) throws IOException {
+    InputStream in = new FileInputStream(report);
+    if (isCompressed(report)) {
+      try {
+        return new BufferedInputStream(new GZIPInputStream(in, 64 * 1024));
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+    return in;
+  }
+
+  public static boolean isCompressed(File report) {
+    return report.getName().endsWith(COMPRESSED_SUFFIX);
+  }
+
+  /**
+   * Returns the name of the report, without the <code>.gz</code> suffix of a
+   * compressed report.
+   */
+  public static String getReportFileName(File report) {
+    String name = report.getName();
+    return isCompressed(report) ? name.substring(0, name.length()
+        - COMPRESSED_SUFFIX.length()) : name;
+  }
+
   public String getReportName() {
     return this.getClass().getName().replaceAll("^.*\\.(\\w+)Parser.*$", "$1");
   }
@@ -0,0 +1,106 @@
+package hudson.plugins.performance;
+
+import java.util.Arrays;
+
+/**
+ * Finds order statistics of a <code>long[]</code> in expected linear time,
+ * without sorting it. Several ranks are resolved in a single pass by
+ * partitioning only the ranges that still contain a requested rank.
+ *
+ * <p>
+ * The array is reordered in place.
+ */
+public final class QuickSelect {
+
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private QuickSelect() {
+  }
+
+  /**
+   * Returns the values that would be at each of the given positions if the
+   * first <code>size</code> elements of <code>values</code> were sorted.
+   *
+   * @param ranks
+   *            positions between 0 and <code>size - 1</code>, in any order
+   * @return the value at each rank, in the order of <code>ranks</code>
+   */
+  public static long[] select(long[] values, int size, int[] ranks) {
+    int[] sortedRanks = new int[ranks.length];
+    System.arraycopy(ranks, 0, sortedRanks, 0, ranks.length);
+    Arrays.sort(sortedRanks);
+    select(values, 0, size - 1, sortedRanks, 0, sortedRanks.length - 1);
+    long[] result = new long[ranks.length];
+    for (int i = 0; i < ranks.length; i++) {
+      result[i] = values[ranks[i]];
+    }
+    return result;
+  }
+
+  private static void select(long[] values, int lo, int hi, int[] ranks,
+      int firstRank, int lastRank) {
+    while (firstRank <= lastRank && lo < hi) {
+      if (hi - lo < INSERTION_SORT_THRESHOLD) {
+        insertionSort(values, lo, hi);
+        return;
+      }
+      long pivot = medianOfThree(values[lo], values[(lo + hi) >>> 1], values[hi]);
+      // three-way partition: [lo, lt) < pivot, [lt, gt] == pivot, (gt, hi] > pivot
+      int lt = lo;
+      int gt = hi;
+      int i = lo;
+      while (i <= gt) {
+        if (values[i] < pivot) {
+          swap(values, lt++, i++);
+        } else if (values[i] > pivot) {
+          swap(values, i, gt--);
+        } else {
+          i++;
+        }
+      }
+      int leftLast = firstRank - 1;
+      while (leftLast < lastRank && ranks[leftLast + 1] < lt) {
+        leftLast++;
+      }
+      int rightFirst = lastRank + 1;
+      while (rightFirst > firstRank && ranks[rightFirst - 1] > gt) {
+        rightFirst--;
+      }
+      // recurse into the smaller side, loop on the larger one
+      if (lt - lo < hi - gt) {
+        select(values, lo, lt - 1, ranks, firstRank, leftLast);
+        lo = gt + 1;
+        firstRank = rightFirst;
+      } else {
+        select(values, gt + 1, hi, ranks, rightFirst, lastRank);
+        hi = lt - 1;
+        lastRank = leftLast;
+      }
+    }
+  }
+
+  private static long medianOfThree(long a, long b, long c) {
+    if (a < b) {
+      return b < c ? b : (a < c ? c : a);
+    }
+    return a < c ? a : (b < c ? c : b);
+  }
+
+  private static void insertionSort(long[] values, int lo, int hi) {
+    for (int i = lo + 1; i <= hi; i++) {
+      long value = values[i];
+      int j = i - 1;
+      while (j >= lo && values[j] > value) {
+        values[j + 1] = values[j];
+        j--;
+      }
+      values[j + 1] = value;
+    }
+  }
+
+  private static void swap(long[] values, int i, int j) {
+    long tmp = values[i];
+    values[i] = values[j];
+    values[j] = tmp;
+  }
+}
@@ -0,0 +1,106 @@
+package hudson.plugins.performance;
+
+import hudson.model.Result;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.Map;
+
+/**
+ * Compares a report and each of its URIs with the same report of a baseline
+ * build, read from its stored summary, and marks the build unstable or failed
+ * when a metric got worse by more than a percentage.
+ */
+public class RegressionCheck {
+
+  /**
+   * Samples a report or a URI needs in both builds to be compared, the
+   * percentiles of fewer samples being too noisy.
+   */
+  public static final int MIN_SAMPLES = Integer.getInteger(
+      RegressionCheck.class.getName() + ".minSamples", 10);
+
+  private final ReportMetric metric;
+
+  private final int unstableThreshold;
+
+  private final int failedThreshold;
+
+  /**
+   * @param unstableThreshold
+   *          increase of the metric, in percent, that sets the build as
+   *          unstable, or 0 not to
+   * @param failedThreshold
+   *          increase of the metric, in percent, that sets the build as
+   *          failed, or 0 not to
+   */
+  public RegressionCheck(ReportMetric metric, int unstableThreshold,
+      int failedThreshold) {
+    this.metric = metric;
+    this.unstableThreshold = unstableThreshold;
+    this.failedThreshold = failedThreshold;
+  }
+
+  public boolean isEnabled() {
+    return unstableThreshold > 0 || failedThreshold > 0;
+  }
+
+  /**
+   * Compares a report and its URIs with the baseline, logging every
+   * regression.
+   *
+   * @return the worst result of the comparisons, {@link Result#SUCCESS} if
+   *         nothing regressed
+   */
+  public Result check(PerformanceReport report, PerformanceReport baseline,
+      PrintStream logger) {
+    Result result = compare(report.getReportFileName(), report, baseline,
+        logger);
+    Map<String, UriReport> baselineUris = baseline.getUriReportMap();
+    for (UriReport uriReport : report.getUriListOrdered()) {
+      UriReport baselineUri = baselineUris.get(uriReport.getStaplerUri());
+      if (baselineUri == null) {
+        continue;
+      }
+      Result uriResult = compare(report.getReportFileName() + " "
+          + uriReport.getUri(), uriReport, baselineUri, logger);
+      if (uriResult.isWorseThan(result)) {
+        result = uriResult;
+      }
+    }
+    return result;
+  }
+
+  private Result compare(String name, AbstractReport current,
+      AbstractReport baseline, PrintStream logger) {
+    if (current.size() < MIN_SAMPLES || baseline.size() < MIN_SAMPLES) {
+      return Result.SUCCESS;
+    }
+    double baselineValue = metric.getValue(baseline);
+    if (baselineValue <= 0) {
+      return Result.SUCCESS;
+    }
+    double value = metric.getValue(current);
+    double increase = (value - baselineValue) * 100 / baselineValue;
+    Result result;
+    if (failedThreshold > 0 && increase > failedThreshold) {
+      result = Result.FAILURE;
+    } else if (unstableThreshold > 0 && increase > unstableThreshold) {
+      result = Result.UNSTABLE;
+    } else {
+      return Result.SUCCESS;
+    }
+    DecimalFormat format = new DecimalFormat("0.#");
+    String unit = metric.isDuration() ? " ms" : "%";
+    if (!metric.isDuration()) {
+      value *= 100;
+      baselineValue *= 100;
+    }
+    logger.println("Performance: " + metric + " of " + name + " is "
+        + format.format(value) + unit + ", " + format.format(increase)
+        + "% worse than the " + format.format(baselineValue) + unit
+        + " of the baseline. Setting the build as "
+        + result.toString().toLowerCase());
+    return result;
+  }
+}
@@ -0,0 +1,54 @@
+package hudson.plugins.performance;
+
+import hudson.FilePath.FileCallable;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses reports on the node that holds them and sends back their frozen
+ * statistics only, so that neither the report files nor their samples go
+ * through the channel.
+ */
+public class RemoteReportParser implements FileCallable<List<PerformanceReport>> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final PerformanceReportParser parser;
+
+  /**
+   * Paths of the reports on the node.
+   */
+  private final List<String> reports;
+
+  private final double[] percentiles;
+
+  private final TaskListener listener;
+
+  public RemoteReportParser(PerformanceReportParser parser,
+      List<String> reports, double[] percentiles, TaskListener listener) {
+    this.parser = parser;
+    this.reports = reports;
+    this.percentiles = percentiles;
+    this.listener = listener;
+  }
+
+  public List<PerformanceReport> invoke(File workspace, VirtualChannel channel)
+      throws IOException {
+    List<File> files = new ArrayList<File>();
+    for (String report : reports) {
+      files.add(new File(report));
+    }
+    List<PerformanceReport> result = new ArrayList<PerformanceReport>(
+        parser.parse(null, files, listener));
+    for (PerformanceReport r : result) {
+      r.setPercentiles(percentiles);
+      r.freeze();
+    }
+    return result;
+  }
+}
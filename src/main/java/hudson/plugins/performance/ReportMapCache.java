@@ -0,0 +1,249 @@
+package hudson.plugins.performance;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link PerformanceReportMap}s of the builds viewed recently, for
+ * all the projects, within a share of the heap.
+ *
+ * <p>
+ * Each map is weighed by an estimate of the memory taken by its loaded
+ * reports, their URIs, their timelines and their loaded samples. The least
+ * recently used maps are evicted once the total weight goes over the limit,
+ * and any map that hasn't been used for the expiry time is dropped.
+ *
+ * <p>
+ * The size of the cache and its hits, misses and evictions are logged at
+ * level FINE every {@link Statistics#PERIOD} minutes.
+ */
+public final class ReportMapCache {
+
+  /**
+   * Percentage of the maximum heap the cached maps may take.
+   */
+  public static final int MAX_HEAP_SHARE = Integer.getInteger(
+      ReportMapCache.class.getName() + ".maxHeapShare", 10);
+
+  /**
+   * Minutes a map is kept without being used.
+   */
+  public static final int EXPIRY = Integer.getInteger(
+      ReportMapCache.class.getName() + ".expiry", 60);
+
+  private static final Logger LOGGER = Logger.getLogger(ReportMapCache.class.getName());
+
+  private static final ReportMapCache INSTANCE = new ReportMapCache(
+      Runtime.getRuntime().maxMemory() / 100 * MAX_HEAP_SHARE,
+      EXPIRY * 60 * 1000L);
+
+  /**
+   * Estimated bytes taken by a report besides its URIs.
+   */
+  private static final long REPORT_WEIGHT = 1024;
+
+  /**
+   * Estimated bytes taken by a URI besides its samples, mostly its
+   * statistics.
+   */
+  private static final long URI_WEIGHT = 2048;
+
+  /**
+   * Estimated bytes taken by a bucket of the timeline of a URI.
+   */
+  private static final long BUCKET_WEIGHT = 128;
+
+  /**
+   * Estimated bytes taken by a loaded sample in the columns of its URI.
+   */
+  private static final long SAMPLE_WEIGHT = 24;
+
+  private final long maxWeight;
+
+  private final long expiry;
+
+  private final LinkedHashMap<Object, Entry> maps = new LinkedHashMap<Object, Entry>(
+      16, 0.75f, true);
+
+  private long weight = 0;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long evictions = 0;
+
+  ReportMapCache(long maxWeight, long expiry) {
+    this.maxWeight = maxWeight;
+    this.expiry = expiry;
+  }
+
+  public static ReportMapCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the cached map of a build, or null.
+   */
+  public synchronized PerformanceReportMap get(Object key) {
+    evictExpired(System.currentTimeMillis());
+    Entry entry = maps.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    entry.lastAccess = System.currentTimeMillis();
+    if (entry.map != null) {
+      // samples loaded for a drill-down page make the map heavier
+      reweigh(entry, estimateWeight(entry.map));
+    }
+    return entry.map;
+  }
+
+  public void put(Object key, PerformanceReportMap map) {
+    put(key, map, estimateWeight(map));
+  }
+
+  synchronized void put(Object key, PerformanceReportMap map, long mapWeight) {
+    Entry previous = maps.remove(key);
+    if (previous != null) {
+      weight -= previous.weight;
+    }
+    Entry entry = new Entry(map, System.currentTimeMillis());
+    maps.put(key, entry);
+    reweigh(entry, mapWeight);
+  }
+
+  public synchronized void remove(Object key) {
+    Entry entry = maps.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  private void reweigh(Entry entry, long mapWeight) {
+    weight += mapWeight - entry.weight;
+    entry.weight = mapWeight;
+    Iterator<Entry> eldest = maps.values().iterator();
+    while (weight > maxWeight && eldest.hasNext()) {
+      Entry evicted = eldest.next();
+      if (evicted == entry && maps.size() > 1) {
+        // keep the map in use, the next ones are older
+        continue;
+      }
+      evict(eldest, evicted);
+    }
+  }
+
+  private void evictExpired(long now) {
+    Iterator<Entry> eldest = maps.values().iterator();
+    while (eldest.hasNext()) {
+      Entry entry = eldest.next();
+      if (now - entry.lastAccess < expiry) {
+        // the next ones were used later
+        break;
+      }
+      evict(eldest, entry);
+    }
+  }
+
+  private void evict(Iterator<Entry> iterator, Entry entry) {
+    iterator.remove();
+    weight -= entry.weight;
+    evictions++;
+    LOGGER.log(Level.FINE, "Evicted a performance report map of {0} bytes", entry.weight);
+  }
+
+  /**
+   * Estimates the bytes taken by the reports of a build.
+   */
+  static long estimateWeight(PerformanceReportMap map) {
+    long estimate = 0;
+    if (map != null) {
+      for (PerformanceReport report : map.getLoadedReports()) {
+        estimate += REPORT_WEIGHT;
+        for (UriReport uriReport : report.getUriReportMap().values()) {
+          estimate += URI_WEIGHT + SAMPLE_WEIGHT * uriReport.getSampleCount()
+              + BUCKET_WEIGHT * uriReport.getTimeline().getBucketCount();
+        }
+      }
+    }
+    return estimate;
+  }
+
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * Estimated bytes taken by the cached maps.
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public synchronized int size() {
+    return maps.size();
+  }
+
+  /**
+   * Logs the statistics of the cache, to help tune its system properties.
+   */
+  @Extension
+  public static final class Statistics extends PeriodicWork {
+
+    /**
+     * Minutes between two logs.
+     */
+    static final int PERIOD = 10;
+
+    @Override
+    public long getRecurrencePeriod() {
+      return PERIOD * MIN;
+    }
+
+    @Override
+    protected void doRun() {
+      if (LOGGER.isLoggable(Level.FINE)) {
+        LOGGER.fine(getInstance().getStatistics());
+      }
+    }
+  }
+
+  /**
+   * Describes the size of the cache and its hits, misses and evictions.
+   */
+  synchronized String getStatistics() {
+    return "Performance report map cache: " + maps.size() + " maps, " + weight
+        + " of " + maxWeight + " bytes, " + hits + " hits, " + misses
+        + " misses, " + evictions + " evictions";
+  }
+
+  private static final class Entry {
+    final PerformanceReportMap map;
+
+    long lastAccess;
+
+    long weight = 0;
+
+    Entry(PerformanceReportMap map, long lastAccess) {
+      this.map = map;
+      this.lastAccess = lastAccess;
+    }
+  }
+}
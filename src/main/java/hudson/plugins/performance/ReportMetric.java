@@ -0,0 +1,105 @@
+package hudson.plugins.performance;
+
+/**
+ * A statistic of a report or a URI that thresholds are set on: the average,
+ * the median, a percentile, the maximum or the percentage of errors.
+ */
+public final class ReportMetric {
+
+  public static final ReportMetric AVERAGE = new ReportMetric("average", -1);
+
+  public static final ReportMetric MEDIAN = new ReportMetric("median", 50);
+
+  public static final ReportMetric LINE_90 = new ReportMetric("p90", 90);
+
+  public static final ReportMetric MAX = new ReportMetric("max", -1);
+
+  public static final ReportMetric ERRORS = new ReportMetric("errors", -1);
+
+  private final String name;
+
+  /**
+   * Percentile, in percent, or -1 for the metrics that are not percentiles.
+   */
+  private final double percentile;
+
+  private ReportMetric(String name, double percentile) {
+    this.name = name;
+    this.percentile = percentile;
+  }
+
+  /**
+   * Parses a metric: <code>average</code>, <code>median</code>,
+   * <code>max</code>, <code>errors</code> or a percentile such as
+   * <code>p90</code> or <code>99.9</code>.
+   *
+   * @throws IllegalArgumentException
+   *           if the metric is not one of those
+   */
+  public static ReportMetric parse(String metric) {
+    String name = metric == null ? "" : metric.trim().toLowerCase();
+    if (name.equals(AVERAGE.name)) {
+      return AVERAGE;
+    } else if (name.equals(MEDIAN.name)) {
+      return MEDIAN;
+    } else if (name.equals(MAX.name)) {
+      return MAX;
+    } else if (name.equals(ERRORS.name) || name.equals("error%")) {
+      return ERRORS;
+    }
+    if (name.startsWith("p")) {
+      name = name.substring(1);
+    }
+    try {
+      double percentile = Double.parseDouble(name);
+      if (percentile > 0 && percentile < 100) {
+        return percentile == 50 ? MEDIAN : percentile == 90 ? LINE_90
+            : new ReportMetric("p" + AbstractReport.formatPercentile(percentile),
+                percentile);
+      }
+    } catch (NumberFormatException e) {
+    }
+    throw new IllegalArgumentException("Unknown metric '" + metric + "'");
+  }
+
+  /**
+   * Whether the metric is a duration, in milliseconds, rather than a
+   * percentage.
+   */
+  public boolean isDuration() {
+    return this != ERRORS;
+  }
+
+  /**
+   * Value of the metric for a report or a URI, from its frozen statistics.
+   */
+  public double getValue(AbstractReport report) {
+    if (this == AVERAGE) {
+      return report.getAverage();
+    } else if (this == MEDIAN) {
+      return report.getMedian();
+    } else if (this == LINE_90) {
+      return report.get90Line();
+    } else if (this == MAX) {
+      return report.getMax();
+    } else if (this == ERRORS) {
+      return report.errorPercent();
+    }
+    return report.getPercentile(percentile);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ReportMetric && ((ReportMetric) o).name.equals(name);
+  }
+
+  @Override
+  public int hashCode() {
+    return name.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
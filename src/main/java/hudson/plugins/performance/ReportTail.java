@@ -0,0 +1,163 @@
+package hudson.plugins.performance;
+
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the rows appended to JMeter CSV results since their checkpoints, on
+ * the node that writes them, and sends back the statistics of these rows
+ * only, with the new checkpoints. Merged on the master, they give the same
+ * statistics as parsing the whole files, while the samples themselves never
+ * cross the channel.
+ */
+public class ReportTail implements FileCallable<List<ReportTail.Delta>> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * How far a file was read: the offset of the first row not read yet, and
+   * the header row, which gives the columns of the following rows.
+   */
+  public static final class Checkpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+
+    private final long offset;
+
+    private final byte[] header;
+
+    public Checkpoint(String path) {
+      this(path, 0, null);
+    }
+
+    private Checkpoint(String path, long offset, byte[] header) {
+      this.path = path;
+      this.offset = offset;
+      this.header = header;
+    }
+
+    /**
+     * Path of the file on the node.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+  }
+
+  /**
+   * The rows read from a file since its previous checkpoint.
+   */
+  public static final class Delta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Checkpoint checkpoint;
+
+    private final PerformanceReport report;
+
+    private Delta(Checkpoint checkpoint, PerformanceReport report) {
+      this.checkpoint = checkpoint;
+      this.report = report;
+    }
+
+    public Checkpoint getCheckpoint() {
+      return checkpoint;
+    }
+
+    /**
+     * Statistics of the rows read, unfrozen so that they merge exactly, or
+     * null if the file wasn't read.
+     */
+    public PerformanceReport getReport() {
+      return report;
+    }
+  }
+
+  private final List<Checkpoint> checkpoints;
+
+  /**
+   * Whether the files are complete, so that a last row without its line
+   * break is read as well.
+   */
+  private final boolean complete;
+
+  public ReportTail(List<Checkpoint> checkpoints, boolean complete) {
+    this.checkpoints = checkpoints;
+    this.complete = complete;
+  }
+
+  public List<Delta> invoke(File workspace, VirtualChannel channel)
+      throws IOException {
+    List<Delta> deltas = new ArrayList<Delta>();
+    for (Checkpoint checkpoint : checkpoints) {
+      deltas.add(read(checkpoint));
+    }
+    return deltas;
+  }
+
+  private Delta read(Checkpoint checkpoint) throws IOException {
+    File file = new File(checkpoint.path);
+    byte[] header = checkpoint.header;
+    if (header == null) {
+      header = readFirstLine(file);
+      if (header == null) {
+        // the header row is not written yet
+        return new Delta(checkpoint, null);
+      }
+    }
+    PerformanceReport report = new PerformanceReport();
+    // only the statistics are sent
+    report.discardSamples();
+    report.setReportFileName(PerformanceReportParser.getReportFileName(file));
+    long offset;
+    try {
+      CsvJtlScanner scanner = new CsvJtlScanner(header, header.length, report);
+      offset = Math.max(checkpoint.offset, scanner.getHeaderLength());
+      FileInputStream in = new FileInputStream(file);
+      try {
+        FileChannel channel = in.getChannel();
+        channel.position(offset);
+        offset += complete ? scanner.scan(channel) : scanner.scanCompleteRows(channel);
+      } finally {
+        in.close();
+      }
+    } catch (CsvJtlScanner.FormatException e) {
+      throw new IOException("Performance: Failed to parse " + file + ": "
+          + e.getMessage());
+    }
+    return new Delta(new Checkpoint(checkpoint.path, offset, header), report);
+  }
+
+  /**
+   * Returns the first line of a file with its line break, or null if it is
+   * not complete yet.
+   */
+  private static byte[] readFirstLine(File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    byte[] beginning = JMeterCsvParser.readHeader(file);
+    for (int i = 0; i < beginning.length; i++) {
+      if (beginning[i] == '\n') {
+        byte[] line = new byte[i + 1];
+        System.arraycopy(beginning, 0, line, 0, line.length);
+        return line;
+      }
+    }
+    return null;
+  }
+}
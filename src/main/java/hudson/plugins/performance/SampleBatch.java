@@ -0,0 +1,143 @@
+package hudson.plugins.performance;
+
+/**
+ * Fixed-size buffer of samples stored as primitive columns: label id, start
+ * time in epoch milliseconds, elapsed time and success, then the optional
+ * attributes aggregated by {@link AttributeStatistics}. The batch hands itself
+ * over to its {@link SampleSink} whenever it is full, and once more on
+ * {@link #flush()}.
+ */
+public class SampleBatch {
+
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final SampleSink sink;
+
+  private final int[] labelIds;
+
+  private final long[] timestamps;
+
+  private final long[] elapsed;
+
+  private final boolean[] successful;
+
+  private final long[] latencies;
+
+  private final long[] connects;
+
+  private final long[] bytes;
+
+  private final int[] allThreads;
+
+  private final int[] groupThreads;
+
+  private final String[] hosts;
+
+  private int size = 0;
+
+  public SampleBatch(SampleSink sink) {
+    this(sink, DEFAULT_CAPACITY);
+  }
+
+  public SampleBatch(SampleSink sink, int capacity) {
+    this.sink = sink;
+    this.labelIds = new int[capacity];
+    this.timestamps = new long[capacity];
+    this.elapsed = new long[capacity];
+    this.successful = new boolean[capacity];
+    this.latencies = new long[capacity];
+    this.connects = new long[capacity];
+    this.bytes = new long[capacity];
+    this.allThreads = new int[capacity];
+    this.groupThreads = new int[capacity];
+    this.hosts = new String[capacity];
+  }
+
+  /**
+   * Adds a sample, passing the batch to the sink if it is full. Samples with a
+   * negative label id are ignored.
+   */
+  public void add(int labelId, long timestamp, long elapsedTime, boolean success) {
+    add(labelId, timestamp, elapsedTime, success, -1, -1, -1, -1, -1, null);
+  }
+
+  /**
+   * Adds a sample with its optional attributes, negative values and a null
+   * host meaning that the sample doesn't have them.
+   */
+  public void add(int labelId, long timestamp, long elapsedTime, boolean success,
+      long latency, long connect, long byteCount, int allThreadCount,
+      int groupThreadCount, String host) {
+    if (labelId < 0) {
+      return;
+    }
+    labelIds[size] = labelId;
+    timestamps[size] = timestamp;
+    elapsed[size] = elapsedTime;
+    successful[size] = success;
+    latencies[size] = latency;
+    connects[size] = connect;
+    bytes[size] = byteCount;
+    allThreads[size] = allThreadCount;
+    groupThreads[size] = groupThreadCount;
+    hosts[size] = host;
+    size++;
+    if (size == labelIds.length) {
+      flush();
+    }
+  }
+
+  /**
+   * Passes the pending samples to the sink and empties the batch.
+   */
+  public void flush() {
+    if (size > 0) {
+      sink.addSamples(this);
+      size = 0;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getLabelId(int index) {
+    return labelIds[index];
+  }
+
+  public long getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  public long getElapsed(int index) {
+    return elapsed[index];
+  }
+
+  public boolean isSuccessful(int index) {
+    return successful[index];
+  }
+
+  public long getLatency(int index) {
+    return latencies[index];
+  }
+
+  public long getConnect(int index) {
+    return connects[index];
+  }
+
+  public long getBytes(int index) {
+    return bytes[index];
+  }
+
+  public int getAllThreads(int index) {
+    return allThreads[index];
+  }
+
+  public int getGroupThreads(int index) {
+    return groupThreads[index];
+  }
+
+  public String getHost(int index) {
+    return hosts[index];
+  }
+}
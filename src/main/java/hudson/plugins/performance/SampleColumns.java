@@ -0,0 +1,194 @@
+package hudson.plugins.performance;
+
+/**
+ * Column by column access to the samples of a URI, and to the orders they
+ * can be listed in, so that a page of samples only reads the samples it
+ * shows.
+ *
+ * <p>
+ * Samples are addressed by their index. Orders are given by rank: the
+ * index of the sample at a given rank. Ties by start time are ordered by
+ * index, and ties by duration by start time.
+ */
+public abstract class SampleColumns {
+
+  public abstract int size();
+
+  public abstract long getDate(int index);
+
+  public abstract long getDuration(int index);
+
+  public abstract boolean isSuccessful(int index);
+
+  /**
+   * Index of the sample at the given rank by start time.
+   */
+  public abstract int getByTime(int rank);
+
+  /**
+   * Index of the sample at the given rank by duration.
+   */
+  public abstract int getByDuration(int rank);
+
+  public abstract int getFailureCount();
+
+  /**
+   * Index of the failed sample at the given rank by start time.
+   */
+  public abstract int getFailure(int rank);
+
+  /**
+   * Index of the failed sample at the given rank by duration.
+   */
+  public abstract int getFailureByDuration(int rank);
+
+  /**
+   * Columns of samples held in memory, whose orders are sorted on first use.
+   */
+  public static SampleColumns of(long[] dates, long[] durations,
+      boolean[] successes, int count) {
+    return new InMemory(dates, durations, successes, count);
+  }
+
+  private static final class InMemory extends SampleColumns {
+    private final long[] dates;
+
+    private final long[] durations;
+
+    private final boolean[] successes;
+
+    private final int count;
+
+    private int[] byTime;
+
+    private int[] byDuration;
+
+    private int[] failures;
+
+    private int[] failuresByDuration;
+
+    InMemory(long[] dates, long[] durations, boolean[] successes, int count) {
+      this.dates = dates;
+      this.durations = durations;
+      this.successes = successes;
+      this.count = count;
+    }
+
+    public int size() {
+      return count;
+    }
+
+    public long getDate(int index) {
+      return dates[index];
+    }
+
+    public long getDuration(int index) {
+      return durations[index];
+    }
+
+    public boolean isSuccessful(int index) {
+      return successes[index];
+    }
+
+    public int getByTime(int rank) {
+      return getTimeOrder()[rank];
+    }
+
+    private synchronized int[] getTimeOrder() {
+      if (byTime == null) {
+        byTime = sort(dates, identity(count));
+      }
+      return byTime;
+    }
+
+    public int getByDuration(int rank) {
+      return getDurationOrder()[rank];
+    }
+
+    private synchronized int[] getDurationOrder() {
+      if (byDuration == null) {
+        // ties by duration are ordered by start time, as in a SampleStore
+        int[] indices = new int[count];
+        System.arraycopy(getTimeOrder(), 0, indices, 0, count);
+        byDuration = sort(durations, indices);
+      }
+      return byDuration;
+    }
+
+    public int getFailureCount() {
+      return getFailures().length;
+    }
+
+    public int getFailure(int rank) {
+      return getFailures()[rank];
+    }
+
+    private synchronized int[] getFailures() {
+      if (failures == null) {
+        failures = getFailed(getTimeOrder());
+      }
+      return failures;
+    }
+
+    public synchronized int getFailureByDuration(int rank) {
+      if (failuresByDuration == null) {
+        failuresByDuration = getFailed(getDurationOrder());
+      }
+      return failuresByDuration[rank];
+    }
+
+    /**
+     * Returns the indices of the failed samples, in the given order.
+     */
+    private int[] getFailed(int[] order) {
+      int[] failed = new int[count];
+      int failedCount = 0;
+      for (int rank = 0; rank < count; rank++) {
+        if (!successes[order[rank]]) {
+          failed[failedCount++] = order[rank];
+        }
+      }
+      int[] result = new int[failedCount];
+      System.arraycopy(failed, 0, result, 0, failedCount);
+      return result;
+    }
+  }
+
+  static int[] identity(int count) {
+    int[] indices = new int[count];
+    for (int i = 0; i < count; i++) {
+      indices[i] = i;
+    }
+    return indices;
+  }
+
+  /**
+   * Sorts indices by their keys with a stable merge sort, so that indices
+   * with equal keys keep their order.
+   *
+   * @return the sorted indices, which may be the given array
+   */
+  static int[] sort(long[] keys, int[] indices) {
+    int[] from = indices;
+    int[] to = new int[indices.length];
+    for (int width = 1; width < indices.length; width *= 2) {
+      for (int start = 0; start < indices.length; start += 2 * width) {
+        int middle = Math.min(start + width, indices.length);
+        int end = Math.min(start + 2 * width, indices.length);
+        int i = start;
+        int j = middle;
+        for (int k = start; k < end; k++) {
+          if (i < middle && (j >= end || keys[from[i]] <= keys[from[j]])) {
+            to[k] = from[i++];
+          } else {
+            to[k] = from[j++];
+          }
+        }
+      }
+      int[] swap = from;
+      from = to;
+      to = swap;
+    }
+    return from;
+  }
+}
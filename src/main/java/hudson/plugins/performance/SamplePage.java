@@ -0,0 +1,168 @@
+package hudson.plugins.performance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A page of the samples of a URI, sorted by start time or duration and
+ * possibly restricted to the failed samples.
+ */
+public class SamplePage {
+
+  /**
+   * Samples shown per page unless the page asks for another size.
+   */
+  public static final int DEFAULT_PAGE_SIZE = Integer.getInteger(
+      SamplePage.class.getName() + ".pageSize", 100);
+
+  /**
+   * Largest number of samples a page may ask for.
+   */
+  public static final int MAX_PAGE_SIZE = Integer.getInteger(
+      SamplePage.class.getName() + ".maxPageSize", 1000);
+
+  public static final String SORT_BY_TIME = "time";
+
+  public static final String SORT_BY_DURATION = "duration";
+
+  private final List<HttpSample> samples;
+
+  private final int page;
+
+  private final int pageCount;
+
+  private final int pageSize;
+
+  private final int total;
+
+  private final String sort;
+
+  private final boolean descending;
+
+  private final boolean failuresOnly;
+
+  /**
+   * Reads the samples of the given page.
+   *
+   * @param page
+   *            the page, from 1, brought within the pages there are
+   * @param pageSize
+   *            the number of samples per page, brought within
+   *            {@link #MAX_PAGE_SIZE}
+   */
+  public SamplePage(SampleColumns columns, String uri, int page, int pageSize,
+      String sort, boolean descending, boolean failuresOnly) {
+    this.sort = SORT_BY_DURATION.equals(sort) ? SORT_BY_DURATION : SORT_BY_TIME;
+    this.descending = descending;
+    this.failuresOnly = failuresOnly;
+    this.pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    this.total = failuresOnly ? columns.getFailureCount() : columns.size();
+    this.pageCount = Math.max(1, (total + this.pageSize - 1) / this.pageSize);
+    this.page = Math.max(1, Math.min(page, pageCount));
+
+    boolean byDuration = SORT_BY_DURATION.equals(this.sort);
+    int from = (this.page - 1) * this.pageSize;
+    int to = Math.min(total, from + this.pageSize);
+    List<HttpSample> list = new ArrayList<HttpSample>(Math.max(0, to - from));
+    for (int i = from; i < to; i++) {
+      int rank = descending ? total - 1 - i : i;
+      int index;
+      if (failuresOnly) {
+        index = byDuration ? columns.getFailureByDuration(rank)
+            : columns.getFailure(rank);
+      } else {
+        index = byDuration ? columns.getByDuration(rank) : columns.getByTime(rank);
+      }
+      HttpSample sample = new HttpSample();
+      sample.setDate(new Date(columns.getDate(index)));
+      sample.setDuration(columns.getDuration(index));
+      sample.setSuccessful(columns.isSuccessful(index));
+      sample.setUri(uri);
+      list.add(sample);
+    }
+    this.samples = Collections.unmodifiableList(list);
+  }
+
+  public List<HttpSample> getSamples() {
+    return samples;
+  }
+
+  public int getPage() {
+    return page;
+  }
+
+  public int getPageCount() {
+    return pageCount;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Number of samples listed over all the pages.
+   */
+  public int getTotal() {
+    return total;
+  }
+
+  public String getSort() {
+    return sort;
+  }
+
+  public boolean isDescending() {
+    return descending;
+  }
+
+  public boolean isFailuresOnly() {
+    return failuresOnly;
+  }
+
+  public boolean hasPrevious() {
+    return page > 1;
+  }
+
+  public boolean hasNext() {
+    return page < pageCount;
+  }
+
+  /**
+   * Query string of another page in the same order.
+   */
+  public String getPageUrl(int page) {
+    return getUrl(page, sort, descending, failuresOnly);
+  }
+
+  /**
+   * Query string of the first page sorted by the given column, in the
+   * reverse order if it is already sorted by it.
+   */
+  public String getSortUrl(String sort) {
+    return getUrl(1, sort, sort.equals(this.sort) && !descending, failuresOnly);
+  }
+
+  /**
+   * Query string of the first page with or without the successful samples.
+   */
+  public String getFailuresOnlyUrl(boolean failuresOnly) {
+    return getUrl(1, sort, descending, failuresOnly);
+  }
+
+  private String getUrl(int page, String sort, boolean descending,
+      boolean failuresOnly) {
+    StringBuilder sb = new StringBuilder("?page=").append(page);
+    sb.append("&sort=").append(sort);
+    if (descending) {
+      sb.append("&desc=true");
+    }
+    if (failuresOnly) {
+      sb.append("&failures=true");
+    }
+    if (pageSize != DEFAULT_PAGE_SIZE) {
+      sb.append("&pageSize=").append(pageSize);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,23 @@
+package hudson.plugins.performance;
+
+/**
+ * Receives the samples read by a {@link PerformanceReportParser} column by
+ * column and in batches, so that parsers don't need to build an
+ * {@link HttpSample} for every row of a results file.
+ *
+ * @see SampleBatch
+ */
+public interface SampleSink {
+
+  /**
+   * Returns the id used in {@link SampleBatch} for the given sample label,
+   * assigning a new one the first time a label is seen, or -1 if samples with
+   * this label cannot be recorded.
+   */
+  public int getLabelId(String label);
+
+  /**
+   * Records all the samples currently in the batch.
+   */
+  public void addSamples(SampleBatch batch);
+}
@@ -0,0 +1,132 @@
+package hudson.plugins.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Temporary file holding the samples of a report while it is parsed, so that
+ * the {@link SampleStore} can be written without keeping every sample in
+ * memory. The samples of each {@link UriReport} are appended in blocks of
+ * {@link #BLOCK_SIZE} samples, column by column, and the report only keeps
+ * the block it is filling and the offsets of its full blocks.
+ *
+ * <p>
+ * The file is created with the first full block and deleted by
+ * {@link #delete()}. If it can't be written, the samples are lost and the
+ * drill-down re-parses the report file as for reports without a store.
+ */
+final class SampleSpill {
+
+  private static final Logger LOGGER = Logger.getLogger(SampleSpill.class.getName());
+
+  /**
+   * Samples in a full block.
+   */
+  static final int BLOCK_SIZE = 1024;
+
+  /**
+   * Bytes taken by a full block: start times, durations and successes.
+   */
+  private static final int BLOCK_BYTES = BLOCK_SIZE * (8 + 8 + 1);
+
+  private File file;
+
+  private FileChannel channel;
+
+  private long length = 0;
+
+  private boolean failed = false;
+
+  /**
+   * Appends a full block of samples.
+   *
+   * @return the offset of the block, or -1 if it couldn't be written
+   */
+  synchronized long write(long[] dates, long[] durations, boolean[] successes) {
+    if (failed) {
+      return -1;
+    }
+    try {
+      if (channel == null) {
+        file = File.createTempFile("performance-samples", ".tmp");
+        channel = new RandomAccessFile(file, "rw").getChannel();
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BYTES);
+      buffer.asLongBuffer().put(dates, 0, BLOCK_SIZE);
+      buffer.position(BLOCK_SIZE * 8);
+      buffer.asLongBuffer().put(durations, 0, BLOCK_SIZE);
+      buffer.position(BLOCK_SIZE * 16);
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+        buffer.put(successes[i] ? (byte) 1 : (byte) 0);
+      }
+      buffer.flip();
+      long offset = length;
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, offset + buffer.position());
+      }
+      length += BLOCK_BYTES;
+      return offset;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed to write the samples of a report to "
+          + file, e);
+      failed = true;
+      delete();
+      return -1;
+    }
+  }
+
+  /**
+   * Reads the block at the given offset into the arrays, from the given
+   * index.
+   */
+  synchronized void read(long offset, long[] dates, long[] durations,
+      boolean[] successes, int index) throws IOException {
+    if (channel == null) {
+      throw new IOException("The samples of the report were deleted");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BYTES);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Truncated samples in " + file);
+      }
+    }
+    buffer.flip();
+    buffer.asLongBuffer().get(dates, index, BLOCK_SIZE);
+    buffer.position(BLOCK_SIZE * 8);
+    buffer.asLongBuffer().get(durations, index, BLOCK_SIZE);
+    buffer.position(BLOCK_SIZE * 16);
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      successes[index + i] = buffer.get() != 0;
+    }
+  }
+
+  /**
+   * Whether a block couldn't be written, in which case the samples are lost.
+   */
+  synchronized boolean isFailed() {
+    return failed;
+  }
+
+  /**
+   * Deletes the file, after which no block can be read.
+   */
+  synchronized void delete() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // the file is deleted anyway
+      }
+      channel = null;
+    }
+    if (file != null) {
+      file.delete();
+      file = null;
+    }
+  }
+}
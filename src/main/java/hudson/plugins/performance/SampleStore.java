@@ -0,0 +1,319 @@
+package hudson.plugins.performance;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Keeps the samples of a report in a binary file, column by column and URI
+ * by URI, so that the drill-down page of a URI only maps the samples of that
+ * URI instead of parsing the whole report again.
+ *
+ * <p>
+ * The file starts with an index giving, for each URI, the offset and number
+ * of its samples and the number of its failures. The samples of a URI
+ * follow, ordered by start time, as their start times and durations, as
+ * big-endian longs, and their successes, one byte each. Then come their
+ * indices ordered by duration and the indices of the failures ordered by
+ * start time and by duration, as ints, so that a page of samples in any
+ * order only reads the samples it shows.
+ */
+public final class SampleStore {
+
+  private static final int MAGIC = 0x50534D50;
+
+  private static final int VERSION = 2;
+
+  /**
+   * Bytes taken by a sample: start time, duration, success and rank by
+   * duration.
+   */
+  private static final int SAMPLE_SIZE = 8 + 8 + 1 + 4;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private SampleStore() {
+  }
+
+  /**
+   * Writes the samples of a report that was just parsed.
+   *
+   * @return false if the report doesn't have all its samples, in which case
+   *         nothing is written
+   */
+  public static boolean write(File file, PerformanceReport report)
+      throws IOException {
+    Collection<UriReport> uriReports = report.getUriReportMap().values();
+    for (UriReport uriReport : uriReports) {
+      if (!uriReport.hasHttpSamples()) {
+        return false;
+      }
+    }
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(index);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(uriReports.size());
+    long offset = 0;
+    for (UriReport uriReport : uriReports) {
+      int count = uriReport.getSampleCount();
+      int failures = uriReport.getSampleFailureCount();
+      byte[] name = uriReport.getStaplerUri().getBytes("UTF-8");
+      out.writeInt(name.length);
+      out.write(name);
+      out.writeLong(offset);
+      out.writeInt(count);
+      out.writeInt(failures);
+      offset += (long) count * SAMPLE_SIZE + (long) failures * 8;
+    }
+    out.close();
+
+    // written aside, the previous store may be mapped by pages being shown
+    AtomicFile atomic = new AtomicFile(file);
+    FileOutputStream fos = new FileOutputStream(atomic.getTemporaryFile());
+    boolean written = false;
+    try {
+      FileChannel channel = fos.getChannel();
+      ByteBuffer header = ByteBuffer.wrap(index.toByteArray());
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      for (UriReport uriReport : uriReports) {
+        // read back one URI at a time, the report doesn't hold its samples
+        int count = uriReport.getSampleCount();
+        long[] dates = new long[count];
+        long[] durations = new long[count];
+        boolean[] successes = new boolean[count];
+        uriReport.readSamples(dates, durations, successes);
+        int[] order = SampleColumns.sort(dates, SampleColumns.identity(count));
+        for (int i = 0; i < order.length; i++) {
+          putLong(channel, buffer, dates[order[i]]);
+        }
+        long[] sortedDurations = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+          sortedDurations[i] = durations[order[i]];
+          putLong(channel, buffer, sortedDurations[i]);
+        }
+        for (int i = 0; i < order.length; i++) {
+          if (!buffer.hasRemaining()) {
+            drain(channel, buffer);
+          }
+          buffer.put(successes[order[i]] ? (byte) 1 : (byte) 0);
+        }
+        // ties by duration are ordered by start time
+        int[] byDuration = SampleColumns.sort(sortedDurations,
+            SampleColumns.identity(order.length));
+        for (int i = 0; i < byDuration.length; i++) {
+          putInt(channel, buffer, byDuration[i]);
+        }
+        for (int rank : getFailures(successes, order, SampleColumns.identity(count))) {
+          putInt(channel, buffer, rank);
+        }
+        for (int rank : getFailures(successes, order, byDuration)) {
+          putInt(channel, buffer, rank);
+        }
+      }
+      drain(channel, buffer);
+      fos.close();
+      atomic.commit();
+      written = true;
+    } finally {
+      if (!written) {
+        fos.close();
+        atomic.abort();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the ranks by start time of the failed samples, in the given
+   * order of these ranks.
+   */
+  private static int[] getFailures(boolean[] successes, int[] byTime,
+      int[] order) {
+    int failed = 0;
+    for (int i = 0; i < byTime.length; i++) {
+      if (!successes[i]) {
+        failed++;
+      }
+    }
+    int[] failures = new int[failed];
+    failed = 0;
+    for (int i = 0; i < order.length; i++) {
+      if (!successes[byTime[order[i]]]) {
+        failures[failed++] = order[i];
+      }
+    }
+    return failures;
+  }
+
+  private static void putLong(FileChannel channel, ByteBuffer buffer,
+      long value) throws IOException {
+    if (buffer.remaining() < 8) {
+      drain(channel, buffer);
+    }
+    buffer.putLong(value);
+  }
+
+  private static void putInt(FileChannel channel, ByteBuffer buffer,
+      int value) throws IOException {
+    if (buffer.remaining() < 4) {
+      drain(channel, buffer);
+    }
+    buffer.putInt(value);
+  }
+
+  private static void drain(FileChannel channel, ByteBuffer buffer)
+      throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Maps the samples of a URI, to read only those that are shown.
+   *
+   * @return null if the file or the URI is not in the store
+   */
+  public static SampleColumns open(File file, String staplerUri)
+      throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      FileChannel channel = fis.getChannel();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Channels.newInputStream(channel)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      byte[] wanted = staplerUri.getBytes("UTF-8");
+      int uris = in.readInt();
+      long indexSize = 12;
+      long offset = -1;
+      int count = 0;
+      int failures = 0;
+      for (int i = 0; i < uris; i++) {
+        byte[] name = new byte[in.readInt()];
+        in.readFully(name);
+        long uriOffset = in.readLong();
+        int uriCount = in.readInt();
+        int uriFailures = in.readInt();
+        indexSize += 4 + name.length + 8 + 4 + 4;
+        if (Arrays.equals(name, wanted)) {
+          offset = uriOffset;
+          count = uriCount;
+          failures = uriFailures;
+        }
+      }
+      if (offset < 0) {
+        return null;
+      }
+
+      // mapped column by column, so that no column is limited by the others
+      long position = indexSize + offset;
+      Segment segment = new Segment(count, failures);
+      segment.dates = map(channel, position, count * 8L).asLongBuffer();
+      position += count * 8L;
+      segment.durations = map(channel, position, count * 8L).asLongBuffer();
+      position += count * 8L;
+      segment.successes = map(channel, position, count);
+      position += count;
+      segment.byDuration = map(channel, position, count * 4L).asIntBuffer();
+      position += count * 4L;
+      segment.failures = map(channel, position, failures * 4L).asIntBuffer();
+      position += failures * 4L;
+      segment.failuresByDuration = map(channel, position, failures * 4L).asIntBuffer();
+      return segment;
+    } finally {
+      // the mappings stay valid once the file is closed
+      fis.close();
+    }
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long position,
+      long size) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+  }
+
+  /**
+   * Mapped columns of the samples of a URI, ordered by start time.
+   */
+  private static final class Segment extends SampleColumns {
+    final int count;
+
+    final int failureCount;
+
+    LongBuffer dates;
+
+    LongBuffer durations;
+
+    ByteBuffer successes;
+
+    IntBuffer byDuration;
+
+    IntBuffer failures;
+
+    IntBuffer failuresByDuration;
+
+    Segment(int count, int failureCount) {
+      this.count = count;
+      this.failureCount = failureCount;
+    }
+
+    public int size() {
+      return count;
+    }
+
+    public long getDate(int index) {
+      return dates.get(index);
+    }
+
+    public long getDuration(int index) {
+      return durations.get(index);
+    }
+
+    public boolean isSuccessful(int index) {
+      return successes.get(index) != 0;
+    }
+
+    public int getByTime(int rank) {
+      return rank;
+    }
+
+    public int getByDuration(int rank) {
+      return byDuration.get(rank);
+    }
+
+    public int getFailureCount() {
+      return failureCount;
+    }
+
+    public int getFailure(int rank) {
+      return failures.get(rank);
+    }
+
+    public int getFailureByDuration(int rank) {
+      return failuresByDuration.get(rank);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package hudson.plugins.performance;
+
+import hudson.model.Result;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.Map;
+
+/**
+ * Compares the durations of each URI of a report with those of the same URI
+ * in a baseline build with a {@link MannWhitneyU} test over their stored
+ * histograms, and sets the build as unstable only when a URI is both
+ * significantly and noticeably slower, so that a noisy run alone doesn't.
+ */
+public class SignificanceCheck {
+
+  /**
+   * Samples a URI needs in both builds to be tested, below which the normal
+   * approximation of the test doesn't hold.
+   */
+  public static final int MIN_SAMPLES = Integer.getInteger(
+      SignificanceCheck.class.getName() + ".minSamples", 20);
+
+  private final double significanceLevel;
+
+  private final int minEffect;
+
+  /**
+   * @param significanceLevel
+   *          p-value below which a difference is significant, such as 0.01
+   * @param minEffect
+   *          increase of the median, in percent, below which a significant
+   *          difference is ignored
+   */
+  public SignificanceCheck(double significanceLevel, int minEffect) {
+    this.significanceLevel = significanceLevel;
+    this.minEffect = minEffect;
+  }
+
+  /**
+   * Tests each URI of a report against the baseline, logging every URI
+   * found slower.
+   *
+   * @return {@link Result#UNSTABLE} if a URI is slower, else
+   *         {@link Result#SUCCESS}
+   */
+  public Result check(PerformanceReport report, PerformanceReport baseline,
+      PrintStream logger) {
+    Result result = Result.SUCCESS;
+    Map<String, UriReport> baselineUris = baseline.getUriReportMap();
+    for (UriReport uriReport : report.getUriListOrdered()) {
+      UriReport baselineUri = baselineUris.get(uriReport.getStaplerUri());
+      if (baselineUri == null || uriReport.size() < MIN_SAMPLES
+          || baselineUri.size() < MIN_SAMPLES) {
+        continue;
+      }
+      LogLinearHistogram histogram = uriReport.getHistogram();
+      LogLinearHistogram baselineHistogram = baselineUri.getHistogram();
+      if (histogram == null || baselineHistogram == null) {
+        // summaries written before histograms were kept
+        continue;
+      }
+      MannWhitneyU test = MannWhitneyU.compare(histogram, baselineHistogram);
+      if (test.getPValue() >= significanceLevel || test.getEffectSize() <= .5) {
+        continue;
+      }
+      long median = uriReport.getMedian();
+      long baselineMedian = baselineUri.getMedian();
+      double increase = baselineMedian <= 0 ? Double.POSITIVE_INFINITY
+          : (median - baselineMedian) * 100.0 / baselineMedian;
+      if (increase < minEffect) {
+        continue;
+      }
+      DecimalFormat format = new DecimalFormat("0.#");
+      logger.println("Performance: " + report.getReportFileName() + " "
+          + uriReport.getUri() + " is slower than in the baseline: median "
+          + median + " ms against " + baselineMedian + " ms, "
+          + format.format(test.getEffectSize() * 100)
+          + "% of the pairs of samples slower, p-value "
+          + String.format("%.2g", test.getPValue()) + ". Setting the build as "
+          + Result.UNSTABLE.toString().toLowerCase());
+      result = Result.UNSTABLE;
+    }
+    return result;
+  }
+}
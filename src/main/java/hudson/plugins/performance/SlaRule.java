@@ -0,0 +1,129 @@
+package hudson.plugins.performance;
+
+import hudson.DescriptorExtensionList;
+import hudson.Extension;
+import hudson.model.Describable;
+import hudson.model.Descriptor;
+import hudson.model.Hudson;
+import hudson.model.Result;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+
+/**
+ * An absolute limit on a metric of the URIs matching a pattern, such as
+ * <code>/api/search*</code> p95 below 300 ms, which sets the build as unstable
+ * or failed when exceeded. The rules are matched with a
+ * {@link SlaRuleMatcher}.
+ * This object is persisted with {@link PerformancePublisher} into the project
+ * configuration.
+ */
+public class SlaRule implements Describable<SlaRule> {
+
+  @Extension
+  public static class DescriptorImpl extends Descriptor<SlaRule> {
+    @Override
+    public String getDisplayName() {
+      return Messages.SlaRule_DisplayName();
+    }
+  }
+
+  /**
+   * URIs the rule applies to: a glob, where <code>*</code> matches any
+   * characters and <code>?</code> a single one, or a regular expression.
+   */
+  private final String pattern;
+
+  private final boolean regex;
+
+  /**
+   * Metric limited by the rule, see {@link ReportMetric#parse}.
+   */
+  private final String metric;
+
+  /**
+   * Value of the metric above which the build is unstable, in milliseconds or
+   * in percent for errors, or 0 for no limit.
+   */
+  private final double unstableLimit;
+
+  private final double failedLimit;
+
+  @DataBoundConstructor
+  public SlaRule(String pattern, boolean regex, String metric,
+      double unstableLimit, double failedLimit) {
+    this.pattern = pattern == null ? "" : pattern.trim();
+    this.regex = regex;
+    this.metric = metric == null ? "" : metric.trim();
+    this.unstableLimit = Math.max(0, unstableLimit);
+    this.failedLimit = Math.max(0, failedLimit);
+  }
+
+  public Descriptor<SlaRule> getDescriptor() {
+    return Hudson.getInstance().getDescriptorOrDie(getClass());
+  }
+
+  public static DescriptorExtensionList<SlaRule, Descriptor<SlaRule>> all() {
+    return Hudson.getInstance().getDescriptorList(SlaRule.class);
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  public boolean isRegex() {
+    return regex;
+  }
+
+  public String getMetric() {
+    return metric;
+  }
+
+  public double getUnstableLimit() {
+    return unstableLimit;
+  }
+
+  public double getFailedLimit() {
+    return failedLimit;
+  }
+
+  /**
+   * Checks the rule against a URI it matches, logging the violation if the
+   * metric exceeds a limit.
+   *
+   * @return the result the violation sets the build to, or
+   *         {@link Result#SUCCESS}
+   */
+  Result check(ReportMetric reportMetric, UriReport uriReport,
+      PrintStream logger) {
+    double value = reportMetric.getValue(uriReport);
+    if (!reportMetric.isDuration()) {
+      value *= 100;
+    }
+    double limit;
+    Result result;
+    if (failedLimit > 0 && value > failedLimit) {
+      limit = failedLimit;
+      result = Result.FAILURE;
+    } else if (unstableLimit > 0 && value > unstableLimit) {
+      limit = unstableLimit;
+      result = Result.UNSTABLE;
+    } else {
+      return Result.SUCCESS;
+    }
+    DecimalFormat format = new DecimalFormat("0.#");
+    String unit = reportMetric.isDuration() ? " ms" : "%";
+    logger.println("Performance: " + reportMetric + " of "
+        + uriReport.getUri() + " is " + format.format(value) + unit
+        + ", above the limit of " + format.format(limit) + unit
+        + " of the rule '" + pattern + "'. Setting the build as "
+        + result.toString().toLowerCase());
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return pattern + " " + metric;
+  }
+}
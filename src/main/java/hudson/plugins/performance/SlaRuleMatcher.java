@@ -0,0 +1,270 @@
+package hudson.plugins.performance;
+
+import hudson.model.Result;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds the {@link SlaRule}s matching a URI without trying every rule: exact
+ * patterns are looked up in a hash map, patterns ending with their only
+ * <code>*</code> in a trie walked along the URI, and the other globs and the
+ * regular expressions are combined into a single pattern matched once.
+ *
+ * <p>
+ * The combined pattern is a sequence of optional lookaheads, one per rule,
+ * each followed by an empty group which captures if the rule matches the
+ * whole URI, so that every matching rule is found and not only the first.
+ * Regular expressions with back references can't be renumbered and are
+ * still tried one by one.
+ */
+public class SlaRuleMatcher {
+
+  private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]");
+
+  /**
+   * A rule with its metric parsed.
+   */
+  private static final class CompiledRule {
+    private final SlaRule rule;
+
+    private final ReportMetric metric;
+
+    private final Pattern pattern;
+
+    private CompiledRule(SlaRule rule, ReportMetric metric, Pattern pattern) {
+      this.rule = rule;
+      this.metric = metric;
+      this.pattern = pattern;
+    }
+  }
+
+  /**
+   * A node of the trie of prefixes, holding the rules of the prefix spelled
+   * from the root.
+   */
+  private static final class PrefixNode {
+    private final Map<Character, PrefixNode> children = new HashMap<Character, PrefixNode>();
+
+    private final List<CompiledRule> rules = new ArrayList<CompiledRule>();
+  }
+
+  private final Map<String, List<CompiledRule>> exactRules = new HashMap<String, List<CompiledRule>>();
+
+  private final PrefixNode prefixRules = new PrefixNode();
+
+  private final List<CompiledRule> patternRules = new ArrayList<CompiledRule>();
+
+  private final List<CompiledRule> separateRules = new ArrayList<CompiledRule>();
+
+  /**
+   * Pattern combining {@link #patternRules}, null if there are none.
+   */
+  private Pattern combinedPattern;
+
+  /**
+   * Group of {@link #combinedPattern} capturing if the pattern rule of the
+   * same index matches.
+   */
+  private int[] patternGroups;
+
+  private int size = 0;
+
+  /**
+   * Compiles the rules, skipping and logging those with an invalid pattern or
+   * metric.
+   */
+  public SlaRuleMatcher(List<SlaRule> rules, PrintStream logger) {
+    for (SlaRule rule : rules) {
+      ReportMetric metric;
+      try {
+        metric = ReportMetric.parse(rule.getMetric());
+      } catch (IllegalArgumentException e) {
+        logger.println("Performance: Ignoring the rule '" + rule.getPattern()
+            + "' with the invalid metric '" + rule.getMetric() + "'");
+        continue;
+      }
+      String pattern = rule.getPattern();
+      if (rule.isRegex()) {
+        try {
+          CompiledRule compiled = new CompiledRule(rule, metric, Pattern.compile(pattern));
+          if (BACK_REFERENCE.matcher(pattern).find()) {
+            separateRules.add(compiled);
+          } else {
+            patternRules.add(compiled);
+          }
+        } catch (PatternSyntaxException e) {
+          logger.println("Performance: Ignoring the rule with the invalid regular expression '"
+              + pattern + "'");
+          continue;
+        }
+      } else {
+        int wildcard = indexOfWildcard(pattern);
+        if (wildcard < 0) {
+          List<CompiledRule> exact = exactRules.get(pattern);
+          if (exact == null) {
+            exact = new ArrayList<CompiledRule>(1);
+            exactRules.put(pattern, exact);
+          }
+          exact.add(new CompiledRule(rule, metric, null));
+        } else if (wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '*') {
+          addPrefix(pattern.substring(0, wildcard), new CompiledRule(rule,
+              metric, null));
+        } else {
+          patternRules.add(new CompiledRule(rule, metric, globToRegex(pattern)));
+        }
+      }
+      size++;
+    }
+    combinePatterns();
+  }
+
+  /**
+   * Builds {@link #combinedPattern}, keeping the rules to try one by one if
+   * it doesn't compile to the expected groups.
+   */
+  private void combinePatterns() {
+    if (patternRules.isEmpty()) {
+      return;
+    }
+    StringBuilder regex = new StringBuilder();
+    int[] groups = new int[patternRules.size()];
+    int group = 0;
+    for (int i = 0; i < groups.length; i++) {
+      Pattern pattern = patternRules.get(i).pattern;
+      // the flags of an inline group only apply inside it
+      regex.append("(?:(?=(?").append((pattern.flags() & Pattern.DOTALL) != 0 ? "s" : "")
+          .append(":").append(pattern.pattern()).append(")\\z)())?");
+      group += pattern.matcher("").groupCount() + 1;
+      groups[i] = group;
+    }
+    try {
+      Pattern combined = Pattern.compile(regex.toString());
+      if (combined.matcher("").groupCount() == group) {
+        combinedPattern = combined;
+        patternGroups = groups;
+        return;
+      }
+    } catch (PatternSyntaxException e) {
+      // falls back to the rules one by one
+    }
+    separateRules.addAll(patternRules);
+    patternRules.clear();
+  }
+
+  private static int indexOfWildcard(String glob) {
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' || c == '?') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void addPrefix(String prefix, CompiledRule rule) {
+    PrefixNode node = prefixRules;
+    for (int i = 0; i < prefix.length(); i++) {
+      Character c = prefix.charAt(i);
+      PrefixNode child = node.children.get(c);
+      if (child == null) {
+        child = new PrefixNode();
+        node.children.put(c, child);
+      }
+      node = child;
+    }
+    node.rules.add(rule);
+  }
+
+  static Pattern globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder(glob.length() + 16);
+    int start = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' || c == '?') {
+        if (i > start) {
+          regex.append(Pattern.quote(glob.substring(start, i)));
+        }
+        regex.append(c == '*' ? ".*" : ".");
+        start = i + 1;
+      }
+    }
+    if (start < glob.length()) {
+      regex.append(Pattern.quote(glob.substring(start)));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  /**
+   * Number of valid rules.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the rules matching a URI, in no particular order.
+   */
+  public List<SlaRule> getRules(String uri) {
+    List<SlaRule> rules = new ArrayList<SlaRule>();
+    for (CompiledRule rule : getCompiledRules(uri)) {
+      rules.add(rule.rule);
+    }
+    return rules;
+  }
+
+  private List<CompiledRule> getCompiledRules(String uri) {
+    List<CompiledRule> rules = new ArrayList<CompiledRule>();
+    List<CompiledRule> exact = exactRules.get(uri);
+    if (exact != null) {
+      rules.addAll(exact);
+    }
+    PrefixNode node = prefixRules;
+    for (int i = 0; node != null; i++) {
+      rules.addAll(node.rules);
+      node = i < uri.length() ? node.children.get(uri.charAt(i)) : null;
+    }
+    if (combinedPattern != null) {
+      Matcher matcher = combinedPattern.matcher(uri);
+      // every lookahead is optional, so this always matches the empty prefix
+      matcher.lookingAt();
+      for (int i = 0; i < patternGroups.length; i++) {
+        if (matcher.start(patternGroups[i]) >= 0) {
+          rules.add(patternRules.get(i));
+        }
+      }
+    }
+    for (CompiledRule rule : separateRules) {
+      if (rule.pattern.matcher(uri).matches()) {
+        rules.add(rule);
+      }
+    }
+    return rules;
+  }
+
+  /**
+   * Checks the rules matching each URI of a report, logging every violated
+   * rule.
+   *
+   * @return the worst result of the rules, {@link Result#SUCCESS} if none is
+   *         violated
+   */
+  public Result check(PerformanceReport report, PrintStream logger) {
+    Result result = Result.SUCCESS;
+    for (UriReport uriReport : report.getUriListOrdered()) {
+      for (CompiledRule rule : getCompiledRules(uriReport.getUri())) {
+        Result ruleResult = rule.rule.check(rule.metric, uriReport, logger);
+        if (ruleResult.isWorseThan(result)) {
+          result = ruleResult;
+        }
+      }
+    }
+    return result;
+  }
+}
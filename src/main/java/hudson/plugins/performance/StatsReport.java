@@ -15,7 +15,21 @@ public interface StatsReport {
   public long getAverage();
   public long getMedian();
   public long get90Line();
+  /**
+   * Percentiles configured for this report, in percent, besides the median
+   * and the 90% line.
+   */
+  public double[] getPercentiles();
+  /**
+   * Value at the given percentile, in percent (for example 99.9).
+   */
+  public long getPercentile(double percentile);
   public long getMax();
+  /**
+   * Requests per second, from the start of the first sample to the end of
+   * the last one.
+   */
+  public double getThroughput();
   public long getMin();
   public int size();
 }
@@ -0,0 +1,133 @@
+package hudson.plugins.performance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Reads and writes the summary of a report in a compact binary format: the
+ * frozen statistics of the report and of each of its URIs, and the timeline
+ * and attribute statistics of each URI, without the object graph that
+ * XStream used to write.
+ *
+ * <p>
+ * The file starts with a magic number and a version. Summaries written as
+ * XML by earlier versions don't start with the magic number, which is how
+ * {@link PerformanceReportMap} tells them apart and migrates them.
+ */
+public final class SummaryStore {
+
+  private static final int MAGIC = 0x5053554D;
+
+  private static final int VERSION = 1;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private SummaryStore() {
+  }
+
+  /**
+   * Writes the summary of a report, with the percentiles already set,
+   * replacing the previous summary at once.
+   */
+  public static void write(File file, PerformanceReport report)
+      throws IOException {
+    AtomicFile atomic = new AtomicFile(file);
+    boolean written = false;
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(atomic.getTemporaryFile()), BUFFER_SIZE));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeString(out, report.getReportFileName());
+      double[] percentiles = report.getPercentiles();
+      out.writeInt(percentiles.length);
+      for (double percentile : percentiles) {
+        out.writeDouble(percentile);
+      }
+      // merges the per-URI statistics so the summary keeps exact report totals
+      report.getStatistics().asFrozen().writeTo(out);
+      Collection<UriReport> uriReports = report.getUriReportMap().values();
+      out.writeInt(uriReports.size());
+      for (UriReport uriReport : uriReports) {
+        writeString(out, uriReport.getStaplerUri());
+        writeString(out, uriReport.getUri());
+        uriReport.getStats().asFrozen().writeTo(out);
+        uriReport.getTimeline().writeTo(out);
+        uriReport.getAttributes().writeTo(out);
+      }
+      out.close();
+      atomic.commit();
+      written = true;
+    } finally {
+      if (!written) {
+        out.close();
+        atomic.abort();
+      }
+    }
+  }
+
+  /**
+   * Reads a summary back.
+   *
+   * @return null if the file is not a binary summary
+   */
+  public static PerformanceReport read(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file), BUFFER_SIZE));
+    try {
+      if (file.length() < 8 || in.readInt() != MAGIC) {
+        return null;
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version
+            + " of the performance summary " + file);
+      }
+      PerformanceReport report = new PerformanceReport();
+      report.setReportFileName(readString(in));
+      double[] percentiles = new double[in.readInt()];
+      for (int i = 0; i < percentiles.length; i++) {
+        percentiles[i] = in.readDouble();
+      }
+      report.setPercentiles(percentiles);
+      report.setStatistics(AggregateStatistics.Frozen.readFrom(in));
+      int uris = in.readInt();
+      for (int i = 0; i < uris; i++) {
+        String staplerUri = readString(in);
+        String uri = readString(in);
+        UriReport uriReport = new UriReport(report, staplerUri, uri);
+        uriReport.setStats(AggregateStatistics.Frozen.readFrom(in));
+        uriReport.setTimeline(Timeline.readFrom(in));
+        uriReport.setAttributes(AttributeStatistics.readFrom(in));
+        report.addUriReport(uriReport);
+      }
+      return report;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes a string as its length and UTF-8 bytes, as labels may be longer
+   * than {@link DataOutputStream#writeUTF(String)} allows.
+   */
+  private static void writeString(DataOutputStream out, String value)
+      throws IOException {
+    byte[] bytes = value.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+}
@@ -0,0 +1,257 @@
+package hudson.plugins.performance;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Requests, errors and durations of the samples of a report or a URI over the
+ * time of the test, in buckets of a fixed duration.
+ *
+ * <p>
+ * Buckets start at multiples of their size since the epoch. The series keeps
+ * at most {@link #MAX_BUCKETS} buckets: once the samples span more, the
+ * buckets are merged into coarser ones, going through 1s, 10s, 1min, 5min,
+ * 10min and 1h, then doubling. Each size is a multiple of the previous one,
+ * so buckets merge without overlapping, and two series merge whatever their
+ * sizes.
+ */
+public class Timeline implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Buckets kept at most before they are coarsened.
+   */
+  public static final int MAX_BUCKETS = Integer.getInteger(
+      Timeline.class.getName() + ".maxBuckets", 120);
+
+  private static final long[] BUCKET_SIZES = { 1000L, 10 * 1000L, 60 * 1000L,
+      5 * 60 * 1000L, 10 * 60 * 1000L, 60 * 60 * 1000L };
+
+  /**
+   * Durations within a bucket only need to be told apart roughly.
+   */
+  private static final int SIGNIFICANT_DIGITS = 1;
+
+  private long start = 0;
+
+  private long bucketSize = BUCKET_SIZES[0];
+
+  private int[] counts = new int[0];
+
+  private int[] errors = new int[0];
+
+  private LogLinearHistogram[] durations = new LogLinearHistogram[0];
+
+  /**
+   * Records a sample. Samples without a start time are ignored.
+   */
+  public void record(long timestamp, long duration, boolean error) {
+    if (timestamp <= 0) {
+      return;
+    }
+    int bucket = bucketOf(timestamp);
+    counts[bucket]++;
+    if (error) {
+      errors[bucket]++;
+    }
+    if (durations[bucket] == null) {
+      durations[bucket] = new LogLinearHistogram(SIGNIFICANT_DIGITS);
+    }
+    durations[bucket].record(duration);
+  }
+
+  /**
+   * Adds the buckets of another series, which may span another time or have
+   * another bucket size.
+   */
+  public void merge(Timeline other) {
+    if (other.isEmpty()) {
+      return;
+    }
+    while (bucketSize < other.bucketSize) {
+      coarsen();
+    }
+    for (int i = 0; i < other.counts.length; i++) {
+      if (other.counts[i] == 0) {
+        continue;
+      }
+      int bucket = bucketOf(other.getBucketStart(i));
+      counts[bucket] += other.counts[i];
+      errors[bucket] += other.errors[i];
+      if (durations[bucket] == null) {
+        durations[bucket] = new LogLinearHistogram(SIGNIFICANT_DIGITS);
+      }
+      durations[bucket].add(other.durations[i]);
+    }
+  }
+
+  /**
+   * Returns the bucket of a time, extending or coarsening the buckets to
+   * cover it.
+   */
+  private int bucketOf(long timestamp) {
+    while (true) {
+      long first = align(timestamp, bucketSize);
+      long end = first + bucketSize;
+      if (counts.length > 0) {
+        first = Math.min(first, start);
+        end = Math.max(end, start + counts.length * bucketSize);
+      }
+      if ((end - first) / bucketSize <= MAX_BUCKETS) {
+        extend(first, end);
+        return (int) ((timestamp - start) / bucketSize);
+      }
+      coarsen();
+    }
+  }
+
+  private void extend(long first, long end) {
+    int length = (int) ((end - first) / bucketSize);
+    if (first == start && length == counts.length) {
+      return;
+    }
+    int offset = counts.length == 0 ? 0 : (int) ((start - first) / bucketSize);
+    int[] newCounts = new int[length];
+    int[] newErrors = new int[length];
+    LogLinearHistogram[] newDurations = new LogLinearHistogram[length];
+    System.arraycopy(counts, 0, newCounts, offset, counts.length);
+    System.arraycopy(errors, 0, newErrors, offset, errors.length);
+    System.arraycopy(durations, 0, newDurations, offset, durations.length);
+    start = first;
+    counts = newCounts;
+    errors = newErrors;
+    durations = newDurations;
+  }
+
+  /**
+   * Merges the buckets into buckets of the next size.
+   */
+  private void coarsen() {
+    long newSize = bucketSize * 2;
+    for (int i = 0; i < BUCKET_SIZES.length; i++) {
+      if (BUCKET_SIZES[i] > bucketSize) {
+        newSize = BUCKET_SIZES[i];
+        break;
+      }
+    }
+    if (counts.length == 0) {
+      bucketSize = newSize;
+      return;
+    }
+    long newStart = align(start, newSize);
+    long end = start + counts.length * bucketSize;
+    int length = (int) ((align(end - 1, newSize) - newStart) / newSize) + 1;
+    int[] newCounts = new int[length];
+    int[] newErrors = new int[length];
+    LogLinearHistogram[] newDurations = new LogLinearHistogram[length];
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] == 0) {
+        continue;
+      }
+      int bucket = (int) ((start + i * bucketSize - newStart) / newSize);
+      newCounts[bucket] += counts[i];
+      newErrors[bucket] += errors[i];
+      if (newDurations[bucket] == null) {
+        newDurations[bucket] = durations[i];
+      } else {
+        newDurations[bucket].add(durations[i]);
+      }
+    }
+    start = newStart;
+    bucketSize = newSize;
+    counts = newCounts;
+    errors = newErrors;
+    durations = newDurations;
+  }
+
+  private static long align(long timestamp, long size) {
+    return timestamp - timestamp % size;
+  }
+
+  public boolean isEmpty() {
+    return counts.length == 0;
+  }
+
+  /**
+   * Start of the first bucket, in epoch milliseconds.
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Duration of a bucket, in milliseconds.
+   */
+  public long getBucketSize() {
+    return bucketSize;
+  }
+
+  public int getBucketCount() {
+    return counts.length;
+  }
+
+  public long getBucketStart(int bucket) {
+    return start + bucket * bucketSize;
+  }
+
+  public int getCount(int bucket) {
+    return counts[bucket];
+  }
+
+  public int getErrorCount(int bucket) {
+    return errors[bucket];
+  }
+
+  /**
+   * Requests per second started within a bucket.
+   */
+  public double getThroughput(int bucket) {
+    return counts[bucket] * 1000.0 / bucketSize;
+  }
+
+  /**
+   * Returns the duration at a percentile, between 0 and 1, of the samples
+   * of a bucket, or 0 if the bucket is empty.
+   */
+  public long getPercentile(int bucket, double percentile) {
+    return durations[bucket] == null ? 0 : durations[bucket].getValueAtPercentile(percentile);
+  }
+
+  /**
+   * Writes the series: its start, bucket size and buckets, the empty ones as
+   * a zero count.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeLong(start);
+    out.writeLong(bucketSize);
+    out.writeInt(counts.length);
+    for (int i = 0; i < counts.length; i++) {
+      out.writeInt(counts[i]);
+      if (counts[i] != 0) {
+        out.writeInt(errors[i]);
+        durations[i].writeTo(out);
+      }
+    }
+  }
+
+  static Timeline readFrom(DataInput in) throws IOException {
+    Timeline timeline = new Timeline();
+    timeline.start = in.readLong();
+    timeline.bucketSize = in.readLong();
+    int length = in.readInt();
+    timeline.counts = new int[length];
+    timeline.errors = new int[length];
+    timeline.durations = new LogLinearHistogram[length];
+    for (int i = 0; i < length; i++) {
+      timeline.counts[i] = in.readInt();
+      if (timeline.counts[i] != 0) {
+        timeline.errors[i] = in.readInt();
+        timeline.durations[i] = LogLinearHistogram.readFrom(in);
+      }
+    }
+    return timeline;
+  }
+}
@@ -0,0 +1,485 @@
+package hudson.plugins.performance;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the summary numbers of every report of every build of a project in a
+ * single append-only file, so that the trend graphs and tables don't have to
+ * load the summaries of each build.
+ *
+ * <p>
+ * The file starts with a magic number and a version, followed by one record
+ * per build and report, each prefixed by its length so that fields added
+ * later can be skipped by older readers. When a build publishes a report
+ * twice, its last record wins.
+ *
+ * <p>
+ * The index is built from the summaries of the existing builds when the file
+ * doesn't exist or can't be read. It is rewritten without the records of
+ * deleted builds and the records that were replaced once these are more than
+ * the others. If the file can't be written, the next record rewrites it
+ * whole instead of being appended to it.
+ */
+public final class TrendIndex {
+
+  public static final String FILE_NAME = "performance-trend.idx";
+
+  private static final int MAGIC = 0x50544958;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Records of deleted builds, or replaced, that may stay in the file
+   * however few the others are.
+   */
+  private static final int MIN_GARBAGE = 16;
+
+  private static final Logger LOGGER = Logger.getLogger(TrendIndex.class.getName());
+
+  /**
+   * Indexes loaded so far, by file.
+   */
+  private static final Map<File, TrendIndex> INDEXES = new HashMap<File, TrendIndex>();
+
+  private final File file;
+
+  /**
+   * Entries by build number and report name, null until loaded.
+   */
+  private Map<Integer, Map<String, Entry>> entries;
+
+  /**
+   * Records in the file, including those of deleted builds and those that
+   * were replaced.
+   */
+  private int records;
+
+  /**
+   * Whether the file lacks some of the entries, because it failed to be
+   * written, or ends with a partial record.
+   */
+  private boolean dirty;
+
+  TrendIndex(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the loaded index of a project, building it from the summaries of
+   * its builds if needed.
+   */
+  public static TrendIndex get(AbstractProject<?, ?> project) {
+    File file = new File(project.getRootDir(), FILE_NAME);
+    TrendIndex index;
+    synchronized (INDEXES) {
+      index = INDEXES.get(file);
+      if (index == null) {
+        index = new TrendIndex(file);
+        INDEXES.put(file, index);
+      }
+    }
+    index.load(project);
+    return index;
+  }
+
+  private synchronized void load(AbstractProject<?, ?> project) {
+    if (entries != null) {
+      return;
+    }
+    if (file.exists()) {
+      try {
+        read();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Rebuilding the unreadable trend index "
+            + file, e);
+      }
+    }
+    try {
+      if (entries == null) {
+        rebuild(project);
+      } else {
+        compact(getBuildNumbers(project));
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed to write the trend index " + file, e);
+    }
+  }
+
+  /**
+   * Returns the numbers of a report of a build, or null if it has none.
+   */
+  public synchronized Entry getEntry(int buildNumber, String reportName) {
+    Map<String, Entry> reports = entries.get(buildNumber);
+    return reports == null ? null : reports.get(reportName);
+  }
+
+  /**
+   * Returns the number of the latest build with a record, 0 if there is none.
+   * It changes whenever a build publishes new numbers.
+   */
+  public synchronized int getLastBuildNumber() {
+    int last = 0;
+    for (Integer buildNumber : entries.keySet()) {
+      last = Math.max(last, buildNumber);
+    }
+    return last;
+  }
+
+  /**
+   * Records the numbers of a report that was just published.
+   */
+  public synchronized void append(AbstractBuild<?, ?> build,
+      PerformanceReport report) throws IOException {
+    Entry entry = new Entry(build.getNumber(), build.getTimeInMillis(), report);
+    put(entries, entry);
+    if (dirty || !file.exists()) {
+      // a new file with only this record would hide the history
+      write();
+    } else {
+      dirty = true;
+      FileOutputStream out = new FileOutputStream(file, true);
+      try {
+        // the whole record in a single write, a crash can't leave half a length
+        out.write(entry.toRecord());
+      } finally {
+        out.close();
+      }
+      records++;
+      dirty = false;
+    }
+    compact(getBuildNumbers(build.getProject()));
+  }
+
+  /**
+   * Replaces the index by the numbers read from the summaries of all the
+   * completed builds of the project. The entries are kept even if the file
+   * fails to be written.
+   */
+  public synchronized void rebuild(AbstractProject<?, ?> project)
+      throws IOException {
+    Map<Integer, Map<String, Entry>> rebuilt = new HashMap<Integer, Map<String, Entry>>();
+    for (Object o : project.getBuilds()) {
+      AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) o;
+      PerformanceBuildAction action = build.getAction(PerformanceBuildAction.class);
+      if (action == null || build.isBuilding()) {
+        // a running build appends its records once it is published
+        continue;
+      }
+      for (PerformanceReport report : action.getPerformanceReportMap().getPerformanceListOrdered()) {
+        put(rebuilt, new Entry(build.getNumber(), build.getTimeInMillis(),
+            report));
+      }
+    }
+    entries = rebuilt;
+    write();
+  }
+
+  /**
+   * Drops the entries of the builds that were deleted, and rewrites the file
+   * once most of its records were dropped or replaced.
+   */
+  synchronized void compact(Set<Integer> buildNumbers) throws IOException {
+    entries.keySet().retainAll(buildNumbers);
+    int live = 0;
+    for (Map<String, Entry> reports : entries.values()) {
+      live += reports.size();
+    }
+    if (records - live > Math.max(live, MIN_GARBAGE)) {
+      write();
+    }
+  }
+
+  private static Set<Integer> getBuildNumbers(AbstractProject<?, ?> project) {
+    Set<Integer> numbers = new HashSet<Integer>();
+    for (Object o : project.getBuilds()) {
+      numbers.add(((AbstractBuild<?, ?>) o).getNumber());
+    }
+    return numbers;
+  }
+
+  /**
+   * Replaces the file by the records of the entries only.
+   */
+  private void write() throws IOException {
+    dirty = true;
+    AtomicFile atomic = new AtomicFile(file);
+    writeHeader(atomic.getTemporaryFile());
+    int count = 0;
+    boolean written = false;
+    FileOutputStream out = new FileOutputStream(atomic.getTemporaryFile(), true);
+    try {
+      for (Map<String, Entry> reports : entries.values()) {
+        for (Entry entry : reports.values()) {
+          out.write(entry.toRecord());
+          count++;
+        }
+      }
+      out.close();
+      atomic.commit();
+      written = true;
+    } finally {
+      if (!written) {
+        out.close();
+        atomic.abort();
+      }
+    }
+    records = count;
+    dirty = false;
+  }
+
+  private static void put(Map<Integer, Map<String, Entry>> entries,
+      Entry entry) {
+    Map<String, Entry> reports = entries.get(entry.buildNumber);
+    if (reports == null) {
+      reports = new HashMap<String, Entry>();
+      entries.put(entry.buildNumber, reports);
+    }
+    reports.put(entry.reportName, entry);
+  }
+
+  static void writeHeader(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+    } finally {
+      out.close();
+    }
+  }
+
+  static Map<Integer, Map<String, Entry>> read(File file) throws IOException {
+    TrendIndex index = new TrendIndex(file);
+    index.read();
+    return index.entries;
+  }
+
+  /**
+   * Reads the entries from the file.
+   */
+  void read() throws IOException {
+    Map<Integer, Map<String, Entry>> read = new HashMap<Integer, Map<String, Entry>>();
+    int count = 0;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a trend index: " + file);
+      }
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        byte[] record = new byte[length];
+        try {
+          in.readFully(record);
+        } catch (EOFException e) {
+          // the last record was cut short by a crash, it is lost and the
+          // file is rewritten before anything is appended to it
+          dirty = true;
+          break;
+        }
+        put(read, Entry.fromRecord(record));
+        count++;
+      }
+    } finally {
+      in.close();
+    }
+    entries = read;
+    records = count;
+  }
+
+  /**
+   * Frozen summary numbers of a report of a build.
+   */
+  public static final class Entry implements StatsReport {
+    private final int buildNumber;
+
+    private final long timestamp;
+
+    private final String reportName;
+
+    private final int size;
+
+    private final int errors;
+
+    private final double errorPercent;
+
+    private final long average;
+
+    private final long median;
+
+    private final long line90;
+
+    private final long min;
+
+    private final long max;
+
+    private final double[] percentiles;
+
+    private final long[] percentileValues;
+
+    private final double throughput;
+
+    Entry(int buildNumber, long timestamp, PerformanceReport report) {
+      this.buildNumber = buildNumber;
+      this.timestamp = timestamp;
+      this.reportName = report.getReportFileName();
+      this.size = report.size();
+      this.errors = report.countErrors();
+      this.errorPercent = report.errorPercent();
+      this.average = report.getAverage();
+      this.median = report.getMedian();
+      this.line90 = report.get90Line();
+      this.min = report.getMin();
+      this.max = report.getMax();
+      this.percentiles = report.getPercentiles();
+      this.percentileValues = new long[percentiles.length];
+      for (int i = 0; i < percentiles.length; i++) {
+        percentileValues[i] = report.getPercentile(percentiles[i]);
+      }
+      this.throughput = report.getThroughput();
+    }
+
+    private Entry(DataInputStream in) throws IOException {
+      this.buildNumber = in.readInt();
+      this.timestamp = in.readLong();
+      this.reportName = in.readUTF();
+      this.size = in.readInt();
+      this.errors = in.readInt();
+      this.errorPercent = in.readDouble();
+      this.average = in.readLong();
+      this.median = in.readLong();
+      this.line90 = in.readLong();
+      this.min = in.readLong();
+      this.max = in.readLong();
+      int count = in.readInt();
+      this.percentiles = new double[count];
+      this.percentileValues = new long[count];
+      for (int i = 0; i < count; i++) {
+        percentiles[i] = in.readDouble();
+        percentileValues[i] = in.readLong();
+      }
+      this.throughput = in.readDouble();
+    }
+
+    static Entry fromRecord(byte[] record) throws IOException {
+      return new Entry(new DataInputStream(new ByteArrayInputStream(record)));
+    }
+
+    /**
+     * Encodes this entry with its length first.
+     */
+    byte[] toRecord() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0);
+      out.writeInt(buildNumber);
+      out.writeLong(timestamp);
+      out.writeUTF(reportName);
+      out.writeInt(size);
+      out.writeInt(errors);
+      out.writeDouble(errorPercent);
+      out.writeLong(average);
+      out.writeLong(median);
+      out.writeLong(line90);
+      out.writeLong(min);
+      out.writeLong(max);
+      out.writeInt(percentiles.length);
+      for (int i = 0; i < percentiles.length; i++) {
+        out.writeDouble(percentiles[i]);
+        out.writeLong(percentileValues[i]);
+      }
+      out.writeDouble(throughput);
+      out.close();
+      byte[] record = bytes.toByteArray();
+      int length = record.length - 4;
+      record[0] = (byte) (length >>> 24);
+      record[1] = (byte) (length >>> 16);
+      record[2] = (byte) (length >>> 8);
+      record[3] = (byte) length;
+      return record;
+    }
+
+    public int getBuildNumber() {
+      return buildNumber;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public String getReportName() {
+      return reportName;
+    }
+
+    public int countErrors() {
+      return errors;
+    }
+
+    public double errorPercent() {
+      return errorPercent;
+    }
+
+    public long getAverage() {
+      return average;
+    }
+
+    public long getMedian() {
+      return median;
+    }
+
+    public long get90Line() {
+      return line90;
+    }
+
+    public double[] getPercentiles() {
+      return percentiles;
+    }
+
+    public long getPercentile(double percentile) {
+      for (int i = 0; i < percentiles.length; i++) {
+        if (percentiles[i] == percentile) {
+          return percentileValues[i];
+        }
+      }
+      return 0;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getMin() {
+      return min;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public double getThroughput() {
+      return throughput;
+    }
+  }
+}
@@ -3,11 +3,18 @@ package hudson.plugins.performance;
 import hudson.model.AbstractBuild;
 import hudson.model.ModelObject;
 
+import java.io.IOException;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.StaplerRequest;
 
 /**
  * A report about a particular tested URI.
@@ -15,14 +22,42 @@ import java.util.List;
  * This object belongs under {@link PerformanceReport}.
  */
 public class UriReport extends AbstractReport implements ModelObject,
-    Comparable<UriReport> {
+    Comparable<UriReport>, Serializable {
+
+  private static final Logger LOGGER = Logger.getLogger(UriReport.class.getName());
 
   public final static String END_PERFORMANCE_PARAMETER = ".endperformanceparameter";
 
   /**
-   * Individual HTTP invocations to this URI and how they went.
+   * Individual HTTP invocations to this URI and how they went, column by
+   * column: start time, duration and success. They are only available for
+   * reports that were just parsed. Only the block being filled is held here,
+   * the full blocks are in the {@link SampleSpill} of the report.
+   */
+  private transient long[] sampleDates = new long[16];
+  private transient long[] sampleDurations = new long[16];
+  private transient boolean[] sampleSuccesses = new boolean[16];
+  private transient int pendingCount = 0;
+
+  /**
+   * Offsets of the full blocks of samples in the {@link SampleSpill}.
+   */
+  private transient long[] blockOffsets = new long[0];
+  private transient int blockCount = 0;
+
+  private transient int sampleCount = 0;
+  private transient int sampleFailures = 0;
+
+  /**
+   * Spill of a URI that doesn't belong to a report.
+   */
+  private transient SampleSpill spill;
+
+  /**
+   * Samples mapped from the {@link SampleStore} of a report loaded from its
+   * summary, null until its page is first shown.
    */
-  private transient final List<HttpSample> httpSampleList = new ArrayList<HttpSample>();
+  private transient SampleColumns storedSamples;
 
   /**
    * The parent object to which this object belongs.
@@ -37,19 +72,263 @@ public class UriReport extends AbstractReport implements ModelObject,
 
   private  AggregateStatistics stats = new AggregateStatistics.Unfrozen();
 
+  /**
+   * Requests, errors and durations of the samples over the time of the test.
+   */
+  private Timeline timeline = new Timeline();
+
+  /**
+   * Latency, connect time, bytes, active threads and hosts of the samples.
+   */
+  private AttributeStatistics attributes = new AttributeStatistics();
+
   private String uri;
 
   UriReport(PerformanceReport performanceReport, String staplerUri, String uri) {
     this.performanceReport = performanceReport;
     this.staplerUri = staplerUri;
     this.uri = uri;
+    if (performanceReport != null) {
+      setPercentiles(performanceReport.getPercentiles());
+    }
+  }
+
+  /**
+   * Sets the percentiles kept in the summary, see
+   * {@link PerformanceReport#setPercentiles(double[])}.
+   */
+  void setPercentiles(double[] percentiles) {
+    if (stats instanceof AggregateStatistics.Unfrozen) {
+      ((AggregateStatistics.Unfrozen) stats).setTrackedPercentiles(percentiles);
+    }
   }
 
   public void addHttpSample(HttpSample httpSample) {
-    httpSampleList.add(httpSample);
+    addSample(httpSample.getDate() == null ? 0 : httpSample.getDate().getTime(),
+        httpSample.getDuration(), httpSample.isSuccessful());
+  }
+
+  public void addSample(long date, long duration, boolean successful) {
+    if (sampleDates != null) {
+      keepSample(date, duration, successful);
+    }
     AggregateStatistics.Unfrozen ufstats = stats.asUnfrozen();
-    ufstats.sample(httpSample.getDuration(), !httpSample.isSuccessful());
+    ufstats.sample(duration, !successful, date);
     stats = ufstats;
+    timeline.record(date, duration, !successful);
+  }
+
+  private void keepSample(long date, long duration, boolean successful) {
+    if (pendingCount == sampleDates.length) {
+      int capacity = Math.min(pendingCount * 2, SampleSpill.BLOCK_SIZE);
+      long[] dates = new long[capacity];
+      long[] durations = new long[capacity];
+      boolean[] successes = new boolean[capacity];
+      System.arraycopy(sampleDates, 0, dates, 0, pendingCount);
+      System.arraycopy(sampleDurations, 0, durations, 0, pendingCount);
+      System.arraycopy(sampleSuccesses, 0, successes, 0, pendingCount);
+      sampleDates = dates;
+      sampleDurations = durations;
+      sampleSuccesses = successes;
+    }
+    sampleDates[pendingCount] = date;
+    sampleDurations[pendingCount] = duration;
+    sampleSuccesses[pendingCount] = successful;
+    pendingCount++;
+    sampleCount++;
+    if (!successful) {
+      sampleFailures++;
+    }
+    if (pendingCount == SampleSpill.BLOCK_SIZE) {
+      long offset = getSampleSpill().write(sampleDates, sampleDurations,
+          sampleSuccesses);
+      if (offset < 0) {
+        discardSamples();
+        return;
+      }
+      if (blockCount == blockOffsets.length) {
+        long[] offsets = new long[Math.max(16, blockCount * 2)];
+        System.arraycopy(blockOffsets, 0, offsets, 0, blockCount);
+        blockOffsets = offsets;
+      }
+      blockOffsets[blockCount++] = offset;
+      pendingCount = 0;
+    }
+  }
+
+  private SampleSpill getSampleSpill() {
+    if (performanceReport != null) {
+      return performanceReport.getSampleSpill();
+    }
+    if (spill == null) {
+      spill = new SampleSpill();
+    }
+    return spill;
+  }
+
+  /**
+   * Appends the samples of the same URI parsed from a later part of the same
+   * file.
+   */
+  void merge(UriReport other) {
+    if (sampleDates != null && other.sampleDates != null) {
+      try {
+        long[] dates = new long[SampleSpill.BLOCK_SIZE];
+        long[] durations = new long[SampleSpill.BLOCK_SIZE];
+        boolean[] successes = new boolean[SampleSpill.BLOCK_SIZE];
+        for (int b = 0; b < other.blockCount && sampleDates != null; b++) {
+          other.getSampleSpill().read(other.blockOffsets[b], dates, durations,
+              successes, 0);
+          for (int i = 0; i < SampleSpill.BLOCK_SIZE && sampleDates != null; i++) {
+            keepSample(dates[i], durations[i], successes[i]);
+          }
+        }
+        for (int i = 0; i < other.pendingCount && sampleDates != null; i++) {
+          keepSample(other.sampleDates[i], other.sampleDurations[i],
+              other.sampleSuccesses[i]);
+        }
+      } catch (IOException e) {
+        discardSamples();
+      }
+    } else {
+      discardSamples();
+    }
+    AggregateStatistics.Unfrozen ufstats = stats.asUnfrozen();
+    ufstats.merge(other.stats);
+    stats = ufstats;
+    timeline.merge(other.getTimeline());
+    getAttributes().merge(other.getAttributes());
+  }
+
+  /**
+   * Records the optional attributes of the sample added last, see
+   * {@link AttributeStatistics#record}.
+   */
+  void addAttributes(long latency, long connect, long bytes, int allThreads,
+      int groupThreads, String host) {
+    attributes.record(latency, connect, bytes, allThreads, groupThreads, host);
+  }
+
+  /**
+   * Returns the histogram of the durations, or null for a summary written
+   * before histograms were kept.
+   */
+  LogLinearHistogram getHistogram() {
+    return stats.getHistogram();
+  }
+
+  /**
+   * Replaces the statistics by their frozen values.
+   */
+  void freeze() {
+    stats = stats.asFrozen();
+  }
+
+  /**
+   * Sets the samples of a report loaded from its summary, mapped from its
+   * {@link SampleStore}.
+   */
+  void setStoredSamples(SampleColumns storedSamples) {
+    this.storedSamples = storedSamples;
+  }
+
+  boolean hasStoredSamples() {
+    return storedSamples != null;
+  }
+
+  /**
+   * Number of the samples kept, see {@link #readSamples}.
+   */
+  int getSampleCount() {
+    return sampleCount;
+  }
+
+  int getSampleFailureCount() {
+    return sampleFailures;
+  }
+
+  /**
+   * Reads the samples kept, in the order they were added, into arrays of at
+   * least {@link #getSampleCount()} elements.
+   */
+  void readSamples(long[] dates, long[] durations, boolean[] successes)
+      throws IOException {
+    if (sampleDates == null) {
+      throw new IOException("The samples of " + uri + " were not kept");
+    }
+    for (int b = 0; b < blockCount; b++) {
+      getSampleSpill().read(blockOffsets[b], dates, durations, successes,
+          b * SampleSpill.BLOCK_SIZE);
+    }
+    int spilled = blockCount * SampleSpill.BLOCK_SIZE;
+    System.arraycopy(sampleDates, 0, dates, spilled, pendingCount);
+    System.arraycopy(sampleDurations, 0, durations, spilled, pendingCount);
+    System.arraycopy(sampleSuccesses, 0, successes, spilled, pendingCount);
+  }
+
+  /**
+   * Stops keeping the samples, once they are stored or not needed. Their
+   * blocks are deleted with the {@link SampleSpill} of the report.
+   */
+  void discardSamples() {
+    sampleDates = null;
+    sampleDurations = null;
+    sampleSuccesses = null;
+    pendingCount = 0;
+    blockOffsets = new long[0];
+    blockCount = 0;
+    sampleCount = 0;
+    sampleFailures = 0;
+    if (spill != null) {
+      spill.delete();
+    }
+  }
+
+  AggregateStatistics getStats() {
+    return stats;
+  }
+
+  /**
+   * Sets the statistics of a report read from its summary.
+   */
+  void setStats(AggregateStatistics stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * Returns the timeline of the samples, empty for summaries written before
+   * timelines were kept.
+   */
+  public Timeline getTimeline() {
+    if (timeline == null) {
+      timeline = new Timeline();
+    }
+    return timeline;
+  }
+
+  /**
+   * Sets the timeline of a report read from its summary.
+   */
+  void setTimeline(Timeline timeline) {
+    this.timeline = timeline;
+  }
+
+  /**
+   * Returns the statistics of the optional attributes of the samples, empty
+   * for summaries written before they were kept.
+   */
+  public AttributeStatistics getAttributes() {
+    if (attributes == null) {
+      attributes = new AttributeStatistics();
+    }
+    return attributes;
+  }
+
+  /**
+   * Sets the attribute statistics of a report read from its summary.
+   */
+  void setAttributes(AttributeStatistics attributes) {
+    this.attributes = attributes;
   }
 
   public int compareTo(UriReport uriReport) {
@@ -79,6 +358,14 @@ public class UriReport extends AbstractReport implements ModelObject,
     return stats.getMedian();
   }
 
+  public double[] getPercentiles() {
+    return performanceReport == null ? new double[0] : performanceReport.getPercentiles();
+  }
+
+  public long getPercentile(double percentile) {
+    return stats.getPercentile(percentile / 100);
+  }
+
   public long getMax() {
     return stats.getMax();
   }
@@ -87,6 +374,10 @@ public class UriReport extends AbstractReport implements ModelObject,
     return stats.getMin();
   }
 
+  public double getThroughput() {
+    return stats.getThroughput();
+  }
+
   public int size() {
     return stats.getSize();
   }
@@ -119,12 +410,87 @@ public class UriReport extends AbstractReport implements ModelObject,
     this.uri = uri;
   }
  
+  /**
+   * Builds the {@link HttpSample}s of this URI, for display.
+   */
   public List<HttpSample> getHttpSamples() {
+    SampleColumns columns = getSampleColumns();
+    List<HttpSample> httpSampleList = new ArrayList<HttpSample>(columns.size());
+    for (int i = 0; i < columns.size(); i++) {
+      HttpSample httpSample = new HttpSample();
+      httpSample.setDate(new Date(columns.getDate(i)));
+      httpSample.setDuration(columns.getDuration(i));
+      httpSample.setSuccessful(columns.isSuccessful(i));
+      httpSample.setUri(uri);
+      httpSampleList.add(httpSample);
+    }
     return Collections.unmodifiableList(httpSampleList);
   }
 
+  /**
+   * Returns the page of samples asked for by the request: its
+   * <code>page</code>, <code>pageSize</code>, <code>sort</code>
+   * (<code>time</code> or <code>duration</code>), <code>desc</code> and
+   * <code>failures</code> parameters. Unless the samples are in memory, only
+   * those of the page are read from the {@link SampleStore}.
+   */
+  public SamplePage getSamplePage(StaplerRequest request) {
+    return new SamplePage(getSampleColumns(), uri,
+        getIntParameter(request, "page", 1),
+        getIntParameter(request, "pageSize", SamplePage.DEFAULT_PAGE_SIZE),
+        request.getParameter("sort"),
+        Boolean.parseBoolean(request.getParameter("desc")),
+        Boolean.parseBoolean(request.getParameter("failures")));
+  }
+
+  private static int getIntParameter(StaplerRequest request, String name,
+      int defaultValue) {
+    String value = request.getParameter(name);
+    if (value != null) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        // ignored, the default applies
+      }
+    }
+    return defaultValue;
+  }
+
+  SampleColumns getSampleColumns() {
+    if (!hasHttpSamples() && storedSamples != null) {
+      return storedSamples;
+    }
+    if (sampleDates != null) {
+      long[] dates = new long[sampleCount];
+      long[] durations = new long[sampleCount];
+      boolean[] successes = new boolean[sampleCount];
+      try {
+        readSamples(dates, durations, successes);
+        return SampleColumns.of(dates, durations, successes, sampleCount);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Failed to read the samples of " + uri, e);
+      }
+    }
+    return SampleColumns.of(new long[0], new long[0], new boolean[0], 0);
+  }
+
   public boolean hasHttpSamples() {
-    return httpSampleList != null && httpSampleList.size() == size();
+    // the blocks of all the URIs are lost if one of them couldn't be written
+    return sampleDates != null && sampleCount == size()
+        && (blockCount == 0 || !getSampleSpill().isFailed());
+  }
+
+  /**
+   * URL of the timeline graph of this URI, relative to its page.
+   *
+   * @param metric
+   *            <code>latency</code> or <code>throughput</code>
+   */
+  public String getTimelineGraphUrl(String metric)
+      throws UnsupportedEncodingException {
+    return "../../timelineGraph?metric=" + metric + "&performanceReportPosition="
+        + URLEncoder.encode(performanceReport.getReportFileName(), "UTF-8")
+        + "&uri=" + URLEncoder.encode(staplerUri, "UTF-8");
   }
 
   public String encodeUriReport() throws UnsupportedEncodingException {
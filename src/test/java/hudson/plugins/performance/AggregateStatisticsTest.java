@@ -0,0 +1,166 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AggregateStatisticsTest {
+
+	@Test
+	public void testSwitchesToHistogramAboveLimit() {
+		AggregateStatistics.Unfrozen stats = new AggregateStatistics.Unfrozen(10, 2);
+		for (int i = 0; i < 10; i++) {
+			stats.sample(i, false);
+		}
+		assertFalse(stats.isRecordingHistogram());
+		stats.sample(10, true);
+		assertTrue(stats.isRecordingHistogram());
+		assertEquals(11, stats.getSize());
+		assertEquals(1, stats.getErrorCount());
+		assertEquals(0, stats.getMin());
+		assertEquals(10, stats.getMax());
+		// small values are recorded exactly
+		assertEquals(5, stats.getMedian());
+		assertEquals(9, stats.get90Line());
+	}
+
+	@Test
+	public void testHistogramErrorBound() {
+		Random random = new Random(42);
+		AggregateStatistics.Unfrozen exact = new AggregateStatistics.Unfrozen(
+				Integer.MAX_VALUE, 2);
+		AggregateStatistics.Unfrozen histogram = new AggregateStatistics.Unfrozen(0, 2);
+		for (int i = 0; i < 50000; i++) {
+			long sample = (long) Math.exp(random.nextGaussian() * 2 + 6);
+			exact.sample(sample, false);
+			histogram.sample(sample, false);
+		}
+		for (double percentile : new double[] { .5, .9, .95, .99, .999 }) {
+			long expected = exact.getPercentile(percentile);
+			long actual = histogram.getPercentile(percentile);
+			assertTrue(actual <= expected);
+			assertTrue(expected - actual <= expected / 100);
+		}
+	}
+
+	@Test
+	public void testFrozenKeepsHistogram() {
+		AggregateStatistics.Unfrozen stats = new AggregateStatistics.Unfrozen(0, 3);
+		for (int i = 1; i <= 1000; i++) {
+			stats.sample(i * 10, false);
+		}
+		LogLinearHistogram decoded = LogLinearHistogram.decode(3,
+				stats.getHistogram().encode());
+		assertEquals(stats.getHistogram().getTotalCount(), decoded.getTotalCount());
+		AggregateStatistics.Frozen frozen = stats.asFrozen();
+		assertEquals(stats.getPercentile(.99), frozen.getPercentile(.99));
+		assertEquals(stats.getMedian(), frozen.getMedian());
+	}
+
+	@Test
+	public void testExactPercentilesMatchSortedSamples() {
+		Random random = new Random(7);
+		AggregateStatistics.Unfrozen stats = new AggregateStatistics.Unfrozen(
+				Integer.MAX_VALUE, 2);
+		long[] sorted = new long[5000];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = random.nextInt(200);
+			stats.sample(sorted[i], false);
+			if (i % 1000 == 999) {
+				// interleaved reads must not disturb later selections
+				stats.getMedian();
+			}
+		}
+		Arrays.sort(sorted);
+		double[] percentiles = { .9, .5, .99, .999, 0 };
+		long[] values = stats.getPercentiles(percentiles);
+		for (int i = 0; i < percentiles.length; i++) {
+			assertEquals(sorted[(int) (sorted.length * percentiles[i])], values[i]);
+		}
+		assertEquals(sorted[sorted.length / 2], stats.getMedian());
+		assertEquals(sorted[sorted.length * 9 / 10], stats.get90Line());
+	}
+
+	@Test
+	public void testFrozenKeepsTrackedPercentiles() {
+		AggregateStatistics.Unfrozen stats = new AggregateStatistics.Unfrozen(
+				Integer.MAX_VALUE, 2);
+		for (int i = 0; i < 1000; i++) {
+			stats.sample(i, false);
+		}
+		stats.setTrackedPercentiles(new double[] { 95, 99.9 });
+		AggregateStatistics.Frozen frozen = stats.asFrozen();
+		assertEquals(950, frozen.getPercentile(.95));
+		assertEquals(999, frozen.getPercentile(.999));
+		assertEquals(500, frozen.getMedian());
+		assertEquals(900, frozen.get90Line());
+	}
+
+	@Test
+	public void testMergeIsLossless() {
+		Random random = new Random(11);
+		AggregateStatistics.Unfrozen all = new AggregateStatistics.Unfrozen(100, 2);
+		AggregateStatistics.Unfrozen merged = new AggregateStatistics.Unfrozen(100, 2);
+		for (int part = 0; part < 4; part++) {
+			AggregateStatistics.Unfrozen partial = new AggregateStatistics.Unfrozen(100, 2);
+			for (int i = 0; i < 40; i++) {
+				long sample = random.nextInt(5000);
+				boolean error = random.nextInt(10) == 0;
+				all.sample(sample, error);
+				partial.sample(sample, error);
+			}
+			merged.merge(part % 2 == 0 ? partial : partial.asFrozen());
+		}
+		assertTrue(merged.isRecordingHistogram());
+		assertEquals(all.getSize(), merged.getSize());
+		assertEquals(all.getTotal(), merged.getTotal());
+		assertEquals(all.getErrorCount(), merged.getErrorCount());
+		assertEquals(all.getMin(), merged.getMin());
+		assertEquals(all.getMax(), merged.getMax());
+		assertEquals(all.getMedian(), merged.getMedian());
+		assertEquals(all.getPercentile(.99), merged.getPercentile(.99));
+	}
+
+	@Test
+	public void testMergeKeepsExactSamplesUnderLimit() {
+		AggregateStatistics.Unfrozen merged = new AggregateStatistics.Unfrozen(100, 2);
+		for (int part = 0; part < 3; part++) {
+			AggregateStatistics.Unfrozen partial = new AggregateStatistics.Unfrozen(100, 2);
+			for (int i = 0; i < 30; i++) {
+				partial.sample(part * 1000 + i * 31, false);
+			}
+			merged.merge(partial);
+		}
+		assertFalse(merged.isRecordingHistogram());
+		assertEquals(90, merged.getSize());
+		assertEquals(1465, merged.getMedian());
+	}
+
+	@Test
+	public void testThroughputSpansFirstStartToLastEnd() {
+		AggregateStatistics.Unfrozen first = new AggregateStatistics.Unfrozen();
+		AggregateStatistics.Unfrozen second = new AggregateStatistics.Unfrozen();
+		// 10 samples started every 100ms, the last one ending at 2000
+		for (int i = 0; i < 10; i++) {
+			(i < 5 ? first : second).sample(i == 9 ? 1100 : 50, false, 1000 + i * 100);
+		}
+		assertEquals(5 * 1000.0 / 450, first.getThroughput(), 1e-9);
+		first.merge(second);
+		assertEquals(1000, first.getFirstStart());
+		assertEquals(3000, first.getLastEnd());
+		assertEquals(5.0, first.getThroughput(), 1e-9);
+		assertEquals(5.0, first.asFrozen().getThroughput(), 1e-9);
+	}
+
+	@Test
+	public void testNoThroughputWithoutStartTimes() {
+		AggregateStatistics.Unfrozen stats = new AggregateStatistics.Unfrozen();
+		stats.sample(100, false);
+		assertEquals(0.0, stats.getThroughput(), 0);
+	}
+}
@@ -0,0 +1,36 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ChartCacheTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsedImages() {
+		ChartCache cache = new ChartCache(250);
+		cache.put("a", new ChartCache.Image(new byte[100], 0));
+		cache.put("b", new ChartCache.Image(new byte[100], 0));
+		// a is now more recent than b
+		assertNotNull(cache.get("a"));
+		cache.put("c", new ChartCache.Image(new byte[100], 0));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(200, cache.getSize());
+
+		cache.put("a", new ChartCache.Image(new byte[50], 0));
+		assertEquals(150, cache.getSize());
+	}
+
+	@Test
+	public void testETagDependsOnKey() {
+		assertEquals(ChartCache.getETag("job|errors|a.jtl|12"),
+				ChartCache.getETag("job|errors|a.jtl|12"));
+		assertFalse(ChartCache.getETag("job|errors|a.jtl|12").equals(
+				ChartCache.getETag("job|errors|a.jtl|13")));
+	}
+}
@@ -0,0 +1,112 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+public class MannWhitneyUTest {
+
+	@Test
+	public void testCountsTiesForHalf() {
+		Random random = new Random(7);
+		long[] current = new long[300];
+		long[] baseline = new long[200];
+		LogLinearHistogram currentHistogram = new LogLinearHistogram(2);
+		LogLinearHistogram baselineHistogram = new LogLinearHistogram(2);
+		// values below 200 are recorded exactly, and many of them are tied
+		for (int i = 0; i < current.length; i++) {
+			current[i] = 50 + random.nextInt(60);
+			currentHistogram.record(current[i]);
+		}
+		for (int i = 0; i < baseline.length; i++) {
+			baseline[i] = 40 + random.nextInt(60);
+			baselineHistogram.record(baseline[i]);
+		}
+		double u = 0;
+		for (long c : current) {
+			for (long b : baseline) {
+				u += c > b ? 1 : c == b ? .5 : 0;
+			}
+		}
+		MannWhitneyU test = MannWhitneyU.compare(currentHistogram, baselineHistogram);
+		assertEquals(u, test.getU(), 0);
+		assertEquals(u / current.length / baseline.length, test.getEffectSize(), 1e-12);
+		assertTrue(test.getZ() > 0);
+		assertTrue(test.getPValue() < 1e-6);
+	}
+
+	@Test
+	public void testSameDistributionIsNotSignificant() {
+		LogLinearHistogram a = new LogLinearHistogram(2);
+		LogLinearHistogram b = new LogLinearHistogram(2);
+		Random random = new Random(11);
+		for (int i = 0; i < 5000; i++) {
+			a.record((long) (200 * Math.exp(random.nextGaussian() / 2)));
+			b.record((long) (200 * Math.exp(random.nextGaussian() / 2)));
+		}
+		assertTrue(MannWhitneyU.compare(a, b).getPValue() > .01);
+		assertEquals(1, MannWhitneyU.compare(a, a).getPValue(), 1e-6);
+	}
+
+	@Test
+	public void testComparesAcrossPrecisions() {
+		LogLinearHistogram a = new LogLinearHistogram(3);
+		LogLinearHistogram b = new LogLinearHistogram(1);
+		for (int i = 0; i < 1000; i++) {
+			a.record(1000 + i);
+			b.record(1000 + i);
+		}
+		assertEquals(.5, MannWhitneyU.compare(a, b).getEffectSize(), .01);
+	}
+
+	@Test
+	public void testErfc() {
+		assertEquals(1, MannWhitneyU.erfc(0), 1e-7);
+		assertEquals(0.04550026, MannWhitneyU.erfc(2 / Math.sqrt(2)), 1e-7);
+		assertEquals(1.95449974, MannWhitneyU.erfc(-2 / Math.sqrt(2)), 1e-7);
+	}
+
+	@Test
+	public void testFlagsOnlySignificantAndLargeSlowdowns() {
+		PerformanceReport baseline = createReport(200, 200, 1);
+		PerformanceReport report = createReport(260, 202, 2);
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		assertSame(Result.UNSTABLE, new SignificanceCheck(.01, 10).check(report,
+				baseline, new PrintStream(log, true)));
+		String output = log.toString();
+		assertTrue(output, output.contains("results.jtl Home is slower"));
+		// a 1% slowdown is below the minimum effect
+		assertFalse(output, output.contains("Login"));
+
+		// a noisy run of the same distribution
+		assertSame(Result.SUCCESS, new SignificanceCheck(.01, 0).check(
+				createReport(200, 200, 3), baseline,
+				new PrintStream(new ByteArrayOutputStream())));
+	}
+
+	/**
+	 * A report whose URIs have log-normal durations around given medians.
+	 */
+	private static PerformanceReport createReport(long home, long login, long seed) {
+		PerformanceReport report = new PerformanceReport();
+		report.setReportFileName("results.jtl");
+		SampleBatch batch = new SampleBatch(report);
+		int homeId = report.getLabelId("Home");
+		int loginId = report.getLabelId("Login");
+		Random random = new Random(seed);
+		for (int i = 1; i <= 2000; i++) {
+			batch.add(homeId, 1000 + i, (long) (home * Math.exp(random.nextGaussian() / 4)), true);
+			batch.add(loginId, 1000 + i, (long) (login * Math.exp(random.nextGaussian() / 4)), true);
+		}
+		batch.flush();
+		return report;
+	}
+}
@@ -8,6 +8,7 @@ import hudson.model.FreeStyleProject;
 import org.jvnet.hudson.test.HudsonTestCase;
 import org.jvnet.hudson.test.TestBuilder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
@@ -19,7 +20,9 @@ import static java.util.Arrays.asList;
 public class PerformancePublisherTest extends HudsonTestCase {
 	public void testConfigRoundtrip() throws Exception {
 		PerformancePublisher before = new PerformancePublisher(10, 20,
-				asList(new JMeterParser("**/*.jtl")));
+				"95, 99.9", true, false, true, "p99", 10, 25, 3, 0.01, 5,
+				asList(new JMeterParser("**/*.jtl")),
+				asList(new SlaRule("/api/search*", false, "p95", 300, 600)));
 
 		FreeStyleProject p = createFreeStyleProject();
 		p.getPublishersList().add(before);
@@ -29,12 +32,26 @@ public class PerformancePublisherTest extends HudsonTestCase {
 		PerformancePublisher after = p.getPublishersList().get(
 				PerformancePublisher.class);
 		assertEqualBeans(before, after,
-				"errorFailedThreshold,errorUnstableThreshold");
+				"errorFailedThreshold,errorUnstableThreshold,percentiles,parseOnSlave,discardReportFiles,compressReportFiles,"
+						+ "regressionMetric,regressionUnstableThreshold,regressionFailedThreshold,baselineBuild,"
+						+ "significanceLevel,significanceMinEffect");
 		assertEquals(before.getParsers().size(), after.getParsers().size());
 		assertEqualBeans(before.getParsers().get(0), after.getParsers().get(0),
 				"glob");
 		assertEquals(before.getParsers().get(0).getClass(), after.getParsers()
 				.get(0).getClass());
+		assertEquals(1, after.getSlaRules().size());
+		assertEqualBeans(before.getSlaRules().get(0), after.getSlaRules().get(0),
+				"pattern,regex,metric,unstableLimit,failedLimit");
+	}
+
+	public void testParsePercentiles() {
+		double[] percentiles = PerformancePublisher.parsePercentiles(
+				" 95, 99;99.9 100 abc", null);
+		assertEquals(3, percentiles.length);
+		assertEquals(95.0, percentiles[0], 0);
+		assertEquals(99.0, percentiles[1], 0);
+		assertEquals(99.9, percentiles[2], 0);
 	}
 
 	public void testBuild() throws Exception {
@@ -65,4 +82,36 @@ public class PerformancePublisherTest extends HudsonTestCase {
 				.getPage(b,
 						"performance/uriReport/test.jtl;Home.endperformanceparameter/");
 	}
+
+	public void testBuildParsedOnSlave() throws Exception {
+		FreeStyleProject p = createFreeStyleProject();
+		p.setAssignedNode(createSlave());
+		p.getBuildersList().add(new TestBuilder() {
+			@Override
+			public boolean perform(AbstractBuild<?, ?> build,
+					Launcher launcher, BuildListener listener)
+					throws InterruptedException, IOException {
+				build.getWorkspace().child("test.jtl").copyFrom(
+						getClass().getResource("/JMeterResults.jtl"));
+				return true;
+			}
+		});
+		p.getPublishersList().add(
+				new PerformancePublisher(0, 0, "", true, true, false, "p90", 0, 0,
+						0, 0, 0, asList(new JMeterParser("**/*.jtl")), null));
+
+		FreeStyleBuild b = assertBuildStatusSuccess(p.scheduleBuild2(0).get());
+
+		PerformanceBuildAction a = b.getAction(PerformanceBuildAction.class);
+		PerformanceReport report = a.getPerformanceReportMap()
+				.getPerformanceReport("test.jtl");
+		assertNotNull(report);
+		assertEquals(8, report.size());
+		assertEquals(15902, report.getMax());
+		assertEquals(2, report.getUriReportMap().size());
+		assertFalse(new File(b.getRootDir(), PerformanceReportMap
+				.getPerformanceReportDirRelativePath()).exists());
+
+		createWebClient().getPage(b, "performance");
+	}
 }
@@ -6,12 +6,20 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
 
 import hudson.util.StreamTaskListener;
 import org.easymock.classextension.EasyMock;
@@ -59,6 +67,26 @@ public class PerformanceReportTest {
 		assertEquals(duration, performanceReport.getMin());
 	}
 
+	@Test
+	public void testAddSamplesInBatches() {
+		SampleBatch batch = new SampleBatch(performanceReport, 2);
+		int home = performanceReport.getLabelId("Home");
+		int login = performanceReport.getLabelId("Login");
+		assertEquals(home, performanceReport.getLabelId("Home"));
+		batch.add(home, 1000, 10, true);
+		batch.add(login, 1001, 20, false);
+		batch.add(home, 1002, 30, true);
+		batch.add(-1, 1003, 40, true);
+		batch.flush();
+		assertEquals(3, performanceReport.size());
+		assertEquals(1, performanceReport.countErrors());
+		UriReport uriReport = performanceReport.getUriReportMap().get("Home");
+		assertEquals(2, uriReport.size());
+		assertTrue(uriReport.hasHttpSamples());
+		assertEquals(1002, uriReport.getHttpSamples().get(1).getDate().getTime());
+		assertEquals(30, uriReport.getHttpSamples().get(1).getDuration());
+	}
+
 	@Test
 	public void testCountError() throws SAXException {
 		HttpSample sample1 = new HttpSample();
@@ -97,6 +125,11 @@ public class PerformanceReportTest {
 				new StreamTaskListener(System.out)).iterator().next();
 	}
 
+	private PerformanceReport parseOneJMeterCsv(File f) throws IOException {
+		return new JMeterCsvParser("").parse(null, Collections.singleton(f),
+				new StreamTaskListener(System.out)).iterator().next();
+	}
+
 	private PerformanceReport parseOneJUnit(File f) throws IOException {
 		return new JUnitParser("").parse(null, Collections.singleton(f),
 				new StreamTaskListener(System.out)).iterator().next();
@@ -151,4 +184,166 @@ public class PerformanceReportTest {
 		UriReport report = uriReportMap.get("Home");
 		assertNotNull(report);
 	}
+
+	@Test
+	public void testPerformanceReportCsv() throws IOException {
+		PerformanceReport performanceReport = parseOneJMeterCsv(new File(
+				"src/test/resources/JMeterResults.csv"));
+		Map<String, UriReport> uriReportMap = performanceReport
+				.getUriReportMap();
+		assertEquals(3, uriReportMap.size());
+		UriReport home = uriReportMap.get("Home");
+		assertEquals(501, home.getMin());
+		assertEquals(15902, home.getMax());
+		assertEquals(0, home.countErrors());
+		assertEquals(1296846792004L, home.getHttpSamples().get(1).getDate()
+				.getTime());
+		UriReport workgroup = uriReportMap.get("Workgroup");
+		assertEquals(58, workgroup.getMin());
+		assertEquals(1017, workgroup.getMax());
+		assertEquals(9, performanceReport.size());
+		assertEquals(1, performanceReport.countErrors());
+		UriReport search = null;
+		for (UriReport uriReport : uriReportMap.values()) {
+			if (uriReport.getUri().equals("Search, \"advanced\"")) {
+				search = uriReport;
+			}
+		}
+		assertNotNull(search);
+		assertEquals(35, search.getMax());
+	}
+
+	@Test
+	public void testParseReportsConcurrently() throws IOException {
+		List<File> files = Arrays.asList(new File(
+				"src/test/resources/JMeterResults.jtl"), new File(
+				"src/test/resources/missing.jtl"), new File(
+				"src/test/resources/JMeterResultsMultiThread.jtl"));
+		List<PerformanceReport> reports = new ArrayList<PerformanceReport>(
+				new JMeterParser("").parse(null, files, new StreamTaskListener(
+						System.out)));
+		assertEquals(2, reports.size());
+		assertEquals("JMeterResults.jtl", reports.get(0).getReportFileName());
+		assertEquals("JMeterResultsMultiThread.jtl", reports.get(1)
+				.getReportFileName());
+	}
+
+	@Test
+	public void testSplitCsvMatchesSinglePass() throws Exception {
+		File csv = File.createTempFile("JMeterResults", ".csv");
+		csv.deleteOnExit();
+		PrintStream out = new PrintStream(csv, "UTF-8");
+		out.print("timeStamp,elapsed,label,success\r\n");
+		Random random = new Random(3);
+		for (int i = 0; i < 20000; i++) {
+			out.print((1296846792004L + i) + "," + random.nextInt(3000) + ","
+					+ (i % 7 == 0 ? "\"Search, advanced\"" : "Page " + random.nextInt(5))
+					+ "," + (random.nextInt(20) != 0) + "\r\n");
+		}
+		out.close();
+		PerformanceReport single = parseOneJMeterCsv(csv);
+		PerformanceReport split = new JMeterCsvParser("").parse(null, csv,
+				new StreamTaskListener(System.out), 1000);
+		assertEquals(20000, split.size());
+		assertEquals(single.countErrors(), split.countErrors());
+		assertEquals(single.getMedian(), split.getMedian());
+		assertEquals(single.get90Line(), split.get90Line());
+		assertEquals(new ArrayList<String>(single.getUriReportMap().keySet()),
+				new ArrayList<String>(split.getUriReportMap().keySet()));
+		for (UriReport uriReport : single.getUriReportMap().values()) {
+			UriReport other = split.getUriReportMap().get(uriReport.getStaplerUri());
+			assertEquals(uriReport.size(), other.size());
+			assertEquals(uriReport.getMedian(), other.getMedian());
+			assertEquals(uriReport.getHttpSamples().size(), other.getHttpSamples()
+					.size());
+			for (int i = 0; i < uriReport.size(); i++) {
+				assertEquals(uriReport.getHttpSamples().get(i).getDate(), other
+						.getHttpSamples().get(i).getDate());
+			}
+		}
+	}
+
+	@Test
+	public void testRecordsJMeterAttributes() throws IOException {
+		for (PerformanceReport report : Arrays.asList(
+				parseOneJMeter(new File("src/test/resources/JMeterResults.jtl")),
+				parseOneJMeterCsv(new File("src/test/resources/JMeterResults.csv")))) {
+			AttributeStatistics home = report.getUriReportMap().get("Home").getAttributes();
+			assertTrue(home.hasLatency());
+			assertEquals((9770 + 10954 + 321 + 298) / 4, home.getAverageLatency());
+			assertEquals(298, home.getLatencyPercentile(0));
+			// 321 within the precision of the histogram
+			assertEquals(320, home.getLatencyPercentile(.25));
+			assertEquals(2 * 771065 + 2 * 771149, home.getBytes());
+			assertFalse(home.hasConnect());
+			assertFalse(home.hasThreads());
+			AttributeStatistics workgroup = report.getUriReportMap().get("Workgroup")
+					.getAttributes();
+			assertEquals(148, workgroup.getLatencyPercentile(.5));
+			assertEquals(4 * 744705, workgroup.getBytes());
+		}
+	}
+
+	@Test
+	public void testRecordsCsvThreadsAndHosts() throws IOException {
+		File csv = File.createTempFile("JMeterResults", ".csv");
+		csv.deleteOnExit();
+		PrintStream out = new PrintStream(csv, "UTF-8");
+		out.print("timeStamp,elapsed,label,success,bytes,grpThreads,allThreads,Latency,Hostname,Connect\n");
+		for (int i = 0; i < 1000; i++) {
+			// more labels than the scanner's table holds at first
+			out.print((1296846792004L + i) + "," + (100 + i % 50) + ",Page " + (i % 80)
+					+ ",true,1000," + (1 + i % 5) + "," + (1 + i % 10) + "," + (i % 50)
+					+ ",agent" + (i % 2) + "," + (i % 3 == 0 ? "" : "5") + "\n");
+		}
+		out.close();
+		PerformanceReport report = parseOneJMeterCsv(csv);
+		assertEquals(80, report.getUriReportMap().size());
+		for (int i = 0; i < 80; i++) {
+			assertEquals(i < 40 ? 13 : 12, report.getUriReportMap().get("Page " + i).size());
+		}
+		AttributeStatistics all = report.getAttributes();
+		assertEquals(1000 * 1000, all.getBytes());
+		assertEquals(10, all.getMaxAllThreads());
+		assertEquals(5.5, all.getAverageAllThreads(), 1e-9);
+		assertEquals(5, all.getMaxGroupThreads());
+		assertEquals(49, all.getLatencyPercentile(1));
+		assertEquals(5, all.getConnectPercentile(.5));
+		assertEquals(Arrays.asList("agent0", "agent1"), new ArrayList<String>(all.getHosts()));
+	}
+
+	@Test
+	public void testCompressedReports() throws IOException {
+		PerformanceReport jtl = parseOneJMeter(compress(new File(
+				"src/test/resources/JMeterResults.jtl")));
+		assertEquals("JMeterResults.jtl", jtl.getReportFileName());
+		assertEquals(8, jtl.size());
+		assertEquals(15902, jtl.getMax());
+		PerformanceReport csv = parseOneJMeterCsv(compress(new File(
+				"src/test/resources/JMeterResults.csv")));
+		assertEquals("JMeterResults.csv", csv.getReportFileName());
+		assertEquals(9, csv.size());
+		assertEquals(1, csv.countErrors());
+	}
+
+	private File compress(File report) throws IOException {
+		File dir = File.createTempFile("performance", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File compressed = new File(dir, report.getName() + ".gz");
+		compressed.deleteOnExit();
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed));
+		InputStream in = new FileInputStream(report);
+		try {
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		return compressed;
+	}
 }
@@ -0,0 +1,89 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+public class RegressionCheckTest {
+
+	@Test
+	public void testParsesMetrics() {
+		assertSame(ReportMetric.AVERAGE, ReportMetric.parse(" Average "));
+		assertSame(ReportMetric.MEDIAN, ReportMetric.parse("p50"));
+		assertSame(ReportMetric.LINE_90, ReportMetric.parse("90"));
+		assertSame(ReportMetric.MAX, ReportMetric.parse("max"));
+		assertSame(ReportMetric.ERRORS, ReportMetric.parse("error%"));
+		assertEquals("p99.9", ReportMetric.parse("p99.9").toString());
+		assertEquals(ReportMetric.parse("99.9"), ReportMetric.parse("p99.9"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnknownMetrics() {
+		ReportMetric.parse("p100");
+	}
+
+	@Test
+	public void testComparesEachUriWithTheStoredBaseline() throws Exception {
+		PerformanceReport baseline = readBack(createReport(100, 200, 1000));
+		PerformanceReport report = createReport(130, 205, 1000);
+
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		Result result = new RegressionCheck(ReportMetric.LINE_90, 10, 25).check(
+				report, baseline, new PrintStream(log, true));
+		assertSame(Result.FAILURE, result);
+		String output = log.toString();
+		assertTrue(output, output.contains("p90 of results.jtl Home is "));
+		assertFalse(output, output.contains("Login"));
+
+		result = new RegressionCheck(ReportMetric.LINE_90, 10, 0).check(report,
+				baseline, new PrintStream(new ByteArrayOutputStream()));
+		assertSame(Result.UNSTABLE, result);
+		result = new RegressionCheck(ReportMetric.AVERAGE, 50, 0).check(report,
+				baseline, new PrintStream(new ByteArrayOutputStream()));
+		assertSame(Result.SUCCESS, result);
+	}
+
+	@Test
+	public void testSkipsReportsWithTooFewSamples() throws Exception {
+		// two URIs, so that the whole report has too few samples as well
+		int samples = (RegressionCheck.MIN_SAMPLES - 1) / 2;
+		PerformanceReport baseline = createReport(100, 200, samples);
+		PerformanceReport report = createReport(500, 1000, samples);
+		assertSame(Result.SUCCESS, new RegressionCheck(ReportMetric.MAX, 10, 10)
+				.check(report, baseline, new PrintStream(new ByteArrayOutputStream())));
+	}
+
+	/**
+	 * A report whose samples of each URI are spread up to a given duration.
+	 */
+	private static PerformanceReport createReport(long home, long login,
+			int samples) {
+		PerformanceReport report = new PerformanceReport();
+		report.setReportFileName("results.jtl");
+		SampleBatch batch = new SampleBatch(report);
+		int homeId = report.getLabelId("Home");
+		int loginId = report.getLabelId("Login");
+		for (int i = 1; i <= samples; i++) {
+			batch.add(homeId, 1000 + i, home * i / samples, true);
+			batch.add(loginId, 1000 + i, login * i / samples, true);
+		}
+		batch.flush();
+		return report;
+	}
+
+	private static PerformanceReport readBack(PerformanceReport report)
+			throws Exception {
+		File summary = File.createTempFile("summary", ".bin");
+		summary.deleteOnExit();
+		SummaryStore.write(summary, report);
+		return SummaryStore.read(summary);
+	}
+}
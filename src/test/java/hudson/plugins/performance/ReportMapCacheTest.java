@@ -0,0 +1,42 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ReportMapCacheTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsedByWeight() {
+		ReportMapCache cache = new ReportMapCache(1000, Long.MAX_VALUE);
+		cache.put("a", null, 400);
+		cache.put("b", null, 400);
+		cache.get("a");
+		cache.put("c", null, 400);
+		assertEquals(2, cache.size());
+		assertEquals(800, cache.getWeight());
+		assertEquals(1, cache.getEvictionCount());
+
+		cache.get("b");
+		cache.get("c");
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals("Performance report map cache: 2 maps, 800 of 1000 bytes, "
+				+ "2 hits, 1 misses, 1 evictions", cache.getStatistics());
+
+		// a map heavier than the limit doesn't stay
+		cache.put("d", null, 2000);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testExpiresUnusedMaps() {
+		ReportMapCache cache = new ReportMapCache(1000, 0);
+		cache.put("a", null, 100);
+		cache.get("a");
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getEvictionCount());
+	}
+}
@@ -0,0 +1,100 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import hudson.util.StreamTaskListener;
+import org.junit.Test;
+
+public class ReportTailTest {
+
+	private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,success\n";
+
+	@Test
+	public void testReadsOnlyTheCompleteRowsAppended() throws Exception {
+		File csv = File.createTempFile("JMeterResults", ".csv");
+		csv.deleteOnExit();
+		StringBuilder all = new StringBuilder();
+
+		// the header row is not complete yet
+		append(csv, all, "timeStamp,elapsed,la");
+		ReportTail.Checkpoint checkpoint = new ReportTail.Checkpoint(csv.getPath());
+		ReportTail.Delta delta = tail(checkpoint, false);
+		assertNull(delta.getReport());
+
+		append(csv, all, HEADER.substring("timeStamp,elapsed,la".length()));
+		append(csv, all, "1000,100,Home,200,OK,t1,text,true\n");
+		append(csv, all, "1100,200,Login,200,OK,t1,text,fal");
+		delta = tail(delta.getCheckpoint(), false);
+		PerformanceReport live = delta.getReport();
+		assertEquals(1, live.size());
+		assertEquals(all.length() - "1100,200,Login,200,OK,t1,text,fal".length(),
+				delta.getCheckpoint().getOffset());
+
+		append(csv, all, "se\n1200,300,Home,200,OK,t2,text,true\n");
+		for (int i = 0; i < 1000; i++) {
+			append(csv, all, (2000 + i) + "," + (i % 97) + ",Search,200,OK,t3,text,"
+					+ (i % 10 != 0) + "\n");
+		}
+		delta = tail(delta.getCheckpoint(), false);
+		live.merge(delta.getReport());
+
+		// the last row of a complete file is read even without its line break
+		append(csv, all, "5000,400,Home,500,Error,t4,text,false");
+		delta = tail(delta.getCheckpoint(), true);
+		live.merge(delta.getReport());
+		assertEquals(all.length(), delta.getCheckpoint().getOffset());
+
+		PerformanceReport parsed = new JMeterCsvParser("").parse(null, csv,
+				new StreamTaskListener(System.out));
+		assertEquals(parsed.size(), live.size());
+		assertEquals(parsed.countErrors(), live.countErrors());
+		assertEquals(parsed.getMax(), live.getMax());
+		assertEquals(parsed.getMedian(), live.getMedian());
+		assertEquals(parsed.getThroughput(), live.getThroughput(), 0);
+		assertEquals(3, live.getUriReportMap().size());
+		// the percentiles are as exact as when parsed, without sending the samples
+		assertFalse(live.getStatistics().asUnfrozen().isRecordingHistogram());
+		assertEquals(parsed.getPercentile(99), live.getPercentile(99));
+		for (UriReport expected : parsed.getUriReportMap().values()) {
+			UriReport uriReport = live.getUriReportMap().get(expected.getStaplerUri());
+			assertEquals(expected.size(), uriReport.size());
+			assertEquals(expected.countErrors(), uriReport.countErrors());
+			assertEquals(expected.get90Line(), uriReport.get90Line());
+			assertFalse(uriReport.hasHttpSamples());
+		}
+	}
+
+	private static void append(File file, StringBuilder all, String text)
+			throws Exception {
+		OutputStream out = new FileOutputStream(file, true);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+		all.append(text);
+	}
+
+	private static ReportTail.Delta tail(ReportTail.Checkpoint checkpoint,
+			boolean complete) throws Exception {
+		List<ReportTail.Delta> deltas = new ReportTail(
+				Collections.singletonList(checkpoint), complete).invoke(null, null);
+		assertEquals(1, deltas.size());
+		// sent from the node that reads the file
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(deltas.get(0));
+		out.close();
+		return (ReportTail.Delta) new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+	}
+}
@@ -0,0 +1,98 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SamplePageTest {
+
+	private static final int COUNT = 1000;
+
+	private static UriReport createUriReport(PerformanceReport report) {
+		SampleBatch batch = new SampleBatch(report);
+		int home = report.getLabelId("Home");
+		Random random = new Random(3);
+		for (int i = 0; i < COUNT; i++) {
+			// start times slightly out of order, as threads finish in any order
+			batch.add(home, 1000 + i * 10 + random.nextInt(30), random.nextInt(50),
+					random.nextInt(8) != 0);
+		}
+		batch.flush();
+		return report.getUriReportMap().get("Home");
+	}
+
+	@Test
+	public void testPagesFromMemoryAndStoreAgree() throws Exception {
+		PerformanceReport report = new PerformanceReport();
+		UriReport uriReport = createUriReport(report);
+		File store = File.createTempFile("samples", ".bin");
+		store.deleteOnExit();
+		assertTrue(SampleStore.write(store, report));
+
+		SampleColumns memory = uriReport.getSampleColumns();
+		SampleColumns mapped = SampleStore.open(store, "Home");
+		assertEquals(memory.getFailureCount(), mapped.getFailureCount());
+		for (int rank = 0; rank < memory.getFailureCount(); rank++) {
+			int expected = memory.getFailureByDuration(rank);
+			int actual = mapped.getFailureByDuration(rank);
+			assertEquals(memory.getDuration(expected), mapped.getDuration(actual));
+			assertEquals(memory.getDate(expected), mapped.getDate(actual));
+			assertFalse(mapped.isSuccessful(actual));
+		}
+		for (String sort : new String[] { SamplePage.SORT_BY_TIME,
+				SamplePage.SORT_BY_DURATION }) {
+			for (boolean descending : new boolean[] { false, true }) {
+				for (boolean failuresOnly : new boolean[] { false, true }) {
+					for (int page = 1; page <= 4; page++) {
+						List<HttpSample> expected = new SamplePage(memory, "Home", page,
+								70, sort, descending, failuresOnly).getSamples();
+						List<HttpSample> actual = new SamplePage(mapped, "Home", page, 70,
+								sort, descending, failuresOnly).getSamples();
+						assertEquals(expected.size(), actual.size());
+						for (int i = 0; i < expected.size(); i++) {
+							assertEquals(expected.get(i).getDate(), actual.get(i).getDate());
+							assertEquals(expected.get(i).getDuration(), actual.get(i)
+									.getDuration());
+							assertEquals(expected.get(i).isSuccessful(), actual.get(i)
+									.isSuccessful());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPageOrder() throws Exception {
+		UriReport uriReport = createUriReport(new PerformanceReport());
+		SampleColumns columns = uriReport.getSampleColumns();
+
+		SamplePage page = new SamplePage(columns, "Home", 2, 100,
+				SamplePage.SORT_BY_DURATION, true, false);
+		assertEquals(10, page.getPageCount());
+		assertEquals(COUNT, page.getTotal());
+		List<HttpSample> samples = page.getSamples();
+		for (int i = 1; i < samples.size(); i++) {
+			assertTrue(samples.get(i - 1).getDuration() >= samples.get(i).getDuration());
+		}
+
+		page = new SamplePage(columns, "Home", 99, 100, SamplePage.SORT_BY_TIME,
+				false, true);
+		assertEquals(page.getPageCount(), page.getPage());
+		assertFalse(page.hasNext());
+		for (HttpSample sample : page.getSamples()) {
+			assertTrue(sample.isFailed());
+		}
+		samples = new SamplePage(columns, "Home", 1, 1000, SamplePage.SORT_BY_TIME,
+				false, false).getSamples();
+		for (int i = 1; i < samples.size(); i++) {
+			assertFalse(samples.get(i - 1).getDate().after(samples.get(i).getDate()));
+		}
+	}
+}
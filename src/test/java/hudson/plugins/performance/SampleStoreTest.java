@@ -0,0 +1,78 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SampleStoreTest {
+
+	@Test
+	public void testReadsBackTheSamplesOfOneUri() throws Exception {
+		PerformanceReport report = new PerformanceReport();
+		SampleBatch batch = new SampleBatch(report);
+		int home = report.getLabelId("Home");
+		int login = report.getLabelId("http://host/login");
+		for (int i = 0; i < 10000; i++) {
+			batch.add(i % 3 == 0 ? login : home, 1000 + i, i % 500, i % 7 != 0);
+		}
+		batch.flush();
+		File store = File.createTempFile("samples", ".bin");
+		store.deleteOnExit();
+		assertTrue(SampleStore.write(store, report));
+
+		UriReport expected = report.getUriReportMap().get("__host_login");
+		SampleColumns loaded = SampleStore.open(store, "__host_login");
+		List<HttpSample> samples = expected.getHttpSamples();
+		assertEquals(samples.size(), loaded.size());
+		for (int i = 0; i < samples.size(); i++) {
+			HttpSample sample = samples.get(i);
+			assertEquals(sample.getDate().getTime(), loaded.getDate(i));
+			assertEquals(sample.getDuration(), loaded.getDuration(i));
+			assertEquals(sample.isSuccessful(), loaded.isSuccessful(i));
+		}
+
+		assertNull(SampleStore.open(store, "missing"));
+	}
+
+	@Test
+	public void testStoresTheSamplesSpilledByMergedParts() throws Exception {
+		int count = 5 * SampleSpill.BLOCK_SIZE + 7;
+		PerformanceReport report = new PerformanceReport();
+		for (int part = 0; part < 3; part++) {
+			PerformanceReport partReport = new PerformanceReport();
+			SampleBatch batch = new SampleBatch(partReport);
+			int home = partReport.getLabelId("Home");
+			for (int i = part * count; i < (part + 1) * count; i++) {
+				batch.add(home, 1000 + i, i % 800, i % 11 != 0);
+			}
+			batch.flush();
+			report.merge(partReport);
+		}
+		UriReport uriReport = report.getUriReportMap().get("Home");
+		assertTrue(uriReport.hasHttpSamples());
+		File store = File.createTempFile("samples", ".bin");
+		store.deleteOnExit();
+		assertTrue(SampleStore.write(store, report));
+		report.discardSamples();
+		assertFalse(uriReport.hasHttpSamples());
+
+		SampleColumns loaded = SampleStore.open(store, "Home");
+		assertEquals(3 * count, loaded.size());
+		int failures = 0;
+		for (int i = 0; i < loaded.size(); i++) {
+			assertEquals(1000 + i, loaded.getDate(i));
+			assertEquals(i % 800, loaded.getDuration(i));
+			assertEquals(i % 11 != 0, loaded.isSuccessful(i));
+			if (i % 11 == 0) {
+				failures++;
+			}
+		}
+		assertEquals(failures, loaded.getFailureCount());
+	}
+}
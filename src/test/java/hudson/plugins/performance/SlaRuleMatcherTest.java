@@ -0,0 +1,140 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+public class SlaRuleMatcherTest {
+
+	private final SlaRule exact = new SlaRule("/api/login", false, "p95", 100, 0);
+
+	private final SlaRule prefix = new SlaRule("/api/search*", false, "p95", 300, 600);
+
+	private final SlaRule everything = new SlaRule("*", false, "errors", 5, 0);
+
+	private final SlaRule glob = new SlaRule("/api/*/items?", false, "max", 1000, 0);
+
+	private final SlaRule regex = new SlaRule("/static/.*\\.(css|js)", true, "average", 50, 0);
+
+	@Test
+	public void testMatchesEachKindOfPattern() {
+		SlaRuleMatcher matcher = new SlaRuleMatcher(Arrays.asList(exact, prefix,
+				everything, glob, regex), new PrintStream(new ByteArrayOutputStream()));
+		assertEquals(5, matcher.size());
+		assertRules(matcher.getRules("/api/login"), exact, everything);
+		assertRules(matcher.getRules("/api/search"), prefix, everything);
+		assertRules(matcher.getRules("/api/search?q=x"), prefix, everything);
+		assertRules(matcher.getRules("/api/searc"), everything);
+		assertRules(matcher.getRules("/api/cart/items1"), glob, everything);
+		assertRules(matcher.getRules("/api/cart/items"), everything);
+		assertRules(matcher.getRules("/static/app.js"), regex, everything);
+		assertRules(matcher.getRules("/static/app.json"), everything);
+		assertRules(matcher.getRules(""), everything);
+	}
+
+	@Test
+	public void testMatchesManyGlobAndRegexRules() {
+		List<SlaRule> rules = new ArrayList<SlaRule>();
+		for (int i = 0; i < 200; i++) {
+			rules.add(new SlaRule("/api/v" + i + "/*/items?", false, "max", 1000, 0));
+			rules.add(new SlaRule("/api/v" + i + "/(users|orders)/\\d+", true,
+					"average", 50, 0));
+		}
+		// inline flags, groups and back references keep their meaning
+		SlaRule ignoringCase = new SlaRule("(?i)/API/V7/.*", true, "p95", 100, 0);
+		SlaRule backReference = new SlaRule("/api/(v\\d+)/\\1", true, "p95", 100, 0);
+		SlaRule newline = new SlaRule("/api/v3/*", false, "p95", 100, 0);
+		rules.add(ignoringCase);
+		rules.add(backReference);
+		rules.add(new SlaRule("/api/v3/*/", false, "p95", 100, 0));
+		rules.add(newline);
+		SlaRuleMatcher matcher = new SlaRuleMatcher(rules, new PrintStream(
+				new ByteArrayOutputStream()));
+		assertEquals(rules.size(), matcher.size());
+
+		assertRules(matcher.getRules("/api/v7/cart/items1"), rules.get(14),
+				ignoringCase);
+		assertRules(matcher.getRules("/api/v7/users/42"), rules.get(15),
+				ignoringCase);
+		assertRules(matcher.getRules("/api/v12/v12"), backReference);
+		assertRules(matcher.getRules("/api/v12/v13"));
+		assertRules(matcher.getRules("/api/v3/a\nb/"), rules.get(rules.size() - 2),
+				newline);
+		Random random = new Random(5);
+		for (int i = 0; i < 1000; i++) {
+			String uri = "/api/v" + random.nextInt(250) + "/"
+					+ (random.nextBoolean() ? "users" : "cart") + "/"
+					+ (random.nextBoolean() ? "items" + random.nextInt(20) : "" + i);
+			assertRules(matcher.getRules(uri), getRulesOneByOne(rules, uri)
+					.toArray(new SlaRule[0]));
+		}
+	}
+
+	private static List<SlaRule> getRulesOneByOne(List<SlaRule> rules, String uri) {
+		List<SlaRule> matching = new ArrayList<SlaRule>();
+		for (SlaRule rule : rules) {
+			Pattern pattern = rule.isRegex() ? Pattern.compile(rule.getPattern())
+					: SlaRuleMatcher.globToRegex(rule.getPattern());
+			if (pattern.matcher(uri).matches()) {
+				matching.add(rule);
+			}
+		}
+		return matching;
+	}
+
+	@Test
+	public void testSkipsInvalidRules() {
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		SlaRuleMatcher matcher = new SlaRuleMatcher(Arrays.asList(new SlaRule(
+				"/api*", false, "p101", 10, 0), new SlaRule("/api(", true, "max", 10,
+				0), exact), new PrintStream(log, true));
+		assertEquals(1, matcher.size());
+		assertTrue(log.toString().contains("p101"));
+		assertTrue(log.toString().contains("/api("));
+	}
+
+	@Test
+	public void testLogsEveryViolatedRule() {
+		PerformanceReport report = new PerformanceReport();
+		SampleBatch batch = new SampleBatch(report);
+		int login = report.getLabelId("/api/login");
+		int search = report.getLabelId("/api/search?q=x");
+		for (int i = 1; i <= 100; i++) {
+			batch.add(login, 1000 + i, i, true);
+			batch.add(search, 1000 + i, 10 * i, i % 10 != 0);
+		}
+		batch.flush();
+
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		SlaRuleMatcher matcher = new SlaRuleMatcher(Arrays.asList(exact, prefix,
+				everything), new PrintStream(log, true));
+		assertSame(Result.FAILURE, matcher.check(report, new PrintStream(log, true)));
+		String output = log.toString();
+		// p95 of the search is about 950 ms, above its failed limit
+		assertTrue(output, output.contains("p95 of /api/search?q=x is "));
+		assertTrue(output, output.contains("limit of 600 ms"));
+		// 10% of the searches fail
+		assertTrue(output, output.contains("errors of /api/search?q=x is 10%"));
+		assertFalse(output, output.contains("of /api/login"));
+	}
+
+	private static void assertRules(List<SlaRule> actual, SlaRule... expected) {
+		Set<SlaRule> rules = new HashSet<SlaRule>(actual);
+		assertEquals(expected.length, actual.size());
+		assertEquals(new HashSet<SlaRule>(Arrays.asList(expected)), rules);
+	}
+}
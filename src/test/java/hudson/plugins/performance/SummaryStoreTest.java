@@ -0,0 +1,115 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class SummaryStoreTest {
+
+	@Test
+	public void testReadsBackTheFrozenStatistics() throws Exception {
+		PerformanceReport report = new PerformanceReport();
+		report.setReportFileName("results.jtl");
+		SampleBatch batch = new SampleBatch(report);
+		int home = report.getLabelId("Home");
+		int login = report.getLabelId("http://host/login");
+		for (int i = 0; i < 5000; i++) {
+			batch.add(i % 4 == 0 ? login : home, 1000 + i, (i * 37) % 900, i % 9 != 0,
+					(i * 37) % 300, i % 5, 2048, 1 + i % 20, 1 + i % 10, "agent" + i % 3);
+		}
+		batch.flush();
+		report.setPercentiles(new double[] { 95, 99.9 });
+		File summary = File.createTempFile("summary", ".bin");
+		summary.deleteOnExit();
+		SummaryStore.write(summary, report);
+
+		PerformanceReport loaded = SummaryStore.read(summary);
+		assertEquals("results.jtl", loaded.getReportFileName());
+		assertStatsEqual(report, loaded);
+		assertEquals(2, loaded.getUriReportMap().size());
+		for (UriReport expected : report.getUriReportMap().values()) {
+			UriReport uriReport = loaded.getUriReportMap().get(expected.getStaplerUri());
+			assertEquals(expected.getUri(), uriReport.getUri());
+			assertStatsEqual(expected, uriReport);
+			assertEquals(expected.getTimeline().getBucketCount(),
+					uriReport.getTimeline().getBucketCount());
+			AttributeStatistics attributes = uriReport.getAttributes();
+			assertEquals(expected.getAttributes().getLatencyPercentile(.9),
+					attributes.getLatencyPercentile(.9));
+			assertEquals(expected.getAttributes().getAverageConnect(),
+					attributes.getAverageConnect());
+			assertEquals(expected.getAttributes().getBytes(), attributes.getBytes());
+			assertEquals(expected.getAttributes().getMaxAllThreads(),
+					attributes.getMaxAllThreads());
+			assertEquals(3, attributes.getHosts().size());
+		}
+		// five seconds of samples
+		assertEquals(5, loaded.getTimeline().getBucketCount());
+		assertEquals(1000, loaded.getTimeline().getCount(0));
+		// percentiles that were not tracked come from the histogram
+		assertEquals(report.getStatistics().asFrozen().getPercentile(.75),
+				loaded.getStatistics().getPercentile(.75));
+	}
+
+	private static void assertStatsEqual(StatsReport expected, StatsReport actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.countErrors(), actual.countErrors());
+		assertEquals(expected.getAverage(), actual.getAverage());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+		assertEquals(expected.getMedian(), actual.getMedian());
+		assertEquals(expected.get90Line(), actual.get90Line());
+		assertEquals(expected.getPercentile(95), actual.getPercentile(95));
+		assertEquals(expected.getPercentile(99.9), actual.getPercentile(99.9));
+		assertEquals(expected.getThroughput(), actual.getThroughput(), 0);
+	}
+
+	@Test
+	public void testReplacesTheSummaryAtOnce() throws Exception {
+		File dir = File.createTempFile("summaries", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File summary = new File(dir, "results.jtl");
+		summary.deleteOnExit();
+		PerformanceReport report = new PerformanceReport();
+		report.setReportFileName("results.jtl");
+		SummaryStore.write(summary, report);
+		// a reader that opened the previous summary still reads all of it
+		InputStream previous = new FileInputStream(summary);
+		long length = summary.length();
+
+		SampleBatch batch = new SampleBatch(report);
+		int home = report.getLabelId("Home");
+		for (int i = 0; i < 1000; i++) {
+			batch.add(home, 1000 + i, i, true);
+		}
+		batch.flush();
+		SummaryStore.write(summary, report);
+		long read = 0;
+		while (previous.read() >= 0) {
+			read++;
+		}
+		previous.close();
+		assertEquals(length, read);
+		assertEquals(1000, SummaryStore.read(summary).size());
+		assertEquals(1, dir.list().length);
+	}
+
+	@Test
+	public void testDoesNotReadXmlSummaries() throws Exception {
+		File summary = File.createTempFile("summary", ".xml");
+		summary.deleteOnExit();
+		OutputStream out = new FileOutputStream(summary);
+		out.write("<hudson.plugins.performance.PerformanceReport/>".getBytes("UTF-8"));
+		out.close();
+		assertNull(SummaryStore.read(summary));
+	}
+}
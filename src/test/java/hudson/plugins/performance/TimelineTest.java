@@ -0,0 +1,113 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+public class TimelineTest {
+
+	private static final long START = 1300000000000L;
+
+	@Test
+	public void testRecordsIntoSecondBuckets() {
+		Timeline timeline = new Timeline();
+		timeline.record(START + 200, 100, false);
+		timeline.record(START + 700, 15, true);
+		timeline.record(START + 2500, 50, false);
+		assertEquals(1000, timeline.getBucketSize());
+		assertEquals(START, timeline.getStart());
+		assertEquals(3, timeline.getBucketCount());
+		assertEquals(2, timeline.getCount(0));
+		assertEquals(1, timeline.getErrorCount(0));
+		assertEquals(0, timeline.getCount(1));
+		assertEquals(1, timeline.getCount(2));
+		assertEquals(100, timeline.getPercentile(0, 1));
+		assertEquals(0, timeline.getPercentile(1, 0.5));
+	}
+
+	@Test
+	public void testIgnoresSamplesWithoutStartTime() {
+		Timeline timeline = new Timeline();
+		timeline.record(0, 100, false);
+		assertTrue(timeline.isEmpty());
+	}
+
+	@Test
+	public void testExtendsBackwards() {
+		Timeline timeline = new Timeline();
+		timeline.record(START + 5000, 10, false);
+		timeline.record(START + 1000, 20, false);
+		assertEquals(START + 1000, timeline.getStart());
+		assertEquals(5, timeline.getBucketCount());
+		assertEquals(1, timeline.getCount(0));
+		assertEquals(1, timeline.getCount(4));
+	}
+
+	@Test
+	public void testCoarsensLongTests() {
+		Timeline timeline = new Timeline();
+		// a hundred minutes, a sample a second
+		for (int i = 0; i < 6000; i++) {
+			timeline.record(START + i * 1000L, i % 100, i % 10 == 0);
+		}
+		assertEquals(60 * 1000, timeline.getBucketSize());
+		assertTrue(timeline.getBucketCount() <= Timeline.MAX_BUCKETS);
+		int count = 0;
+		int errors = 0;
+		for (int i = 0; i < timeline.getBucketCount(); i++) {
+			count += timeline.getCount(i);
+			errors += timeline.getErrorCount(i);
+		}
+		assertEquals(6000, count);
+		assertEquals(600, errors);
+	}
+
+	@Test
+	public void testMergesAsASinglePass() {
+		Timeline single = new Timeline();
+		Timeline first = new Timeline();
+		Timeline second = new Timeline();
+		for (int i = 0; i < 1000; i++) {
+			long timestamp = START + i * 500L;
+			single.record(timestamp, i, i % 7 == 0);
+			(i < 300 ? first : second).record(timestamp, i, i % 7 == 0);
+		}
+		first.merge(second);
+		assertEquals(single.getBucketSize(), first.getBucketSize());
+		assertEquals(single.getStart(), first.getStart());
+		assertEquals(single.getBucketCount(), first.getBucketCount());
+		for (int i = 0; i < single.getBucketCount(); i++) {
+			assertEquals(single.getCount(i), first.getCount(i));
+			assertEquals(single.getErrorCount(i), first.getErrorCount(i));
+			assertEquals(single.getPercentile(i, 0.9), first.getPercentile(i, 0.9));
+		}
+	}
+
+	@Test
+	public void testReadsBackWhatItWrites() throws Exception {
+		Timeline timeline = new Timeline();
+		for (int i = 0; i < 100; i++) {
+			timeline.record(START + i * 3000L, i * 10, i % 3 == 0);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		timeline.writeTo(out);
+		out.close();
+		Timeline read = Timeline.readFrom(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(timeline.getStart(), read.getStart());
+		assertEquals(timeline.getBucketSize(), read.getBucketSize());
+		assertEquals(timeline.getBucketCount(), read.getBucketCount());
+		for (int i = 0; i < timeline.getBucketCount(); i++) {
+			assertEquals(timeline.getCount(i), read.getCount(i));
+			assertEquals(timeline.getErrorCount(i), read.getErrorCount(i));
+			assertEquals(timeline.getPercentile(i, 0.5), read.getPercentile(i, 0.5));
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package hudson.plugins.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TrendIndexTest {
+
+	private static PerformanceReport createReport(String name, int offset) {
+		PerformanceReport report = new PerformanceReport();
+		report.setReportFileName(name);
+		SampleBatch batch = new SampleBatch(report);
+		int uri = report.getLabelId("Home");
+		for (int i = 0; i < 1000; i++) {
+			batch.add(uri, 1000 + i, offset + i, i % 10 != 0);
+		}
+		batch.flush();
+		report.setPercentiles(new double[] { 99 });
+		return report;
+	}
+
+	@Test
+	public void testReadsRecordsBack() throws Exception {
+		File file = File.createTempFile("trend", ".idx");
+		file.deleteOnExit();
+		TrendIndex.writeHeader(file);
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new TrendIndex.Entry(1, 100, createReport("a.jtl", 0)).toRecord());
+		out.write(new TrendIndex.Entry(2, 200, createReport("a.jtl", 0)).toRecord());
+		// published again, the last record wins
+		out.write(new TrendIndex.Entry(2, 200, createReport("a.jtl", 50)).toRecord());
+		byte[] truncated = new TrendIndex.Entry(3, 300, createReport("a.jtl", 0)).toRecord();
+		out.write(truncated, 0, truncated.length - 5);
+		out.close();
+
+		Map<Integer, Map<String, TrendIndex.Entry>> entries = TrendIndex.read(file);
+		assertEquals(2, entries.size());
+		TrendIndex.Entry entry = entries.get(2).get("a.jtl");
+		assertEquals(200, entry.getTimestamp());
+		assertEquals(1000, entry.size());
+		assertEquals(100, entry.countErrors());
+		assertEquals(0.1, entry.errorPercent(), 0.001);
+		assertEquals(50, entry.getMin());
+		assertEquals(1049, entry.getMax());
+		assertEquals(550, entry.getMedian());
+		assertEquals(950, entry.get90Line());
+		assertEquals(1040, entry.getPercentile(99));
+		// from the start at 1000 to the end at 1999 + 1049
+		assertEquals(1000 * 1000.0 / 2048, entry.getThroughput(), 1e-9);
+		assertNull(entries.get(1).get("b.jtl"));
+	}
+
+	@Test
+	public void testCompactsRecordsOfDeletedBuilds() throws Exception {
+		File file = File.createTempFile("trend", ".idx");
+		file.deleteOnExit();
+		TrendIndex.writeHeader(file);
+		FileOutputStream out = new FileOutputStream(file, true);
+		for (int i = 1; i <= 50; i++) {
+			out.write(new TrendIndex.Entry(i, i * 100, createReport("a.jtl", 0)).toRecord());
+		}
+		out.close();
+		long length = file.length();
+		TrendIndex index = new TrendIndex(file);
+		index.read();
+
+		Set<Integer> kept = new HashSet<Integer>();
+		for (int i = 20; i <= 50; i++) {
+			kept.add(i);
+		}
+		// fewer records dropped than kept, the file is left as it is
+		index.compact(kept);
+		assertEquals(length, file.length());
+		assertNull(index.getEntry(19, "a.jtl"));
+
+		kept.retainAll(Arrays.asList(45, 46, 47, 48, 49, 50));
+		index.compact(kept);
+		Map<Integer, Map<String, TrendIndex.Entry>> entries = TrendIndex.read(file);
+		assertEquals(kept, entries.keySet());
+		assertEquals(4500, entries.get(45).get("a.jtl").getTimestamp());
+	}
+}